@@ -0,0 +1,85 @@
+package com.aadhaar.linkage.benchmark;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the /manage payloads: reading a LinkageRequest (typed, and the old map-shaped request for
+ * comparison) and writing the LinkageResponse with the record summary INSERT/SEARCH return.
+ * Run with {@code -prof gc} to see the bytes allocated per request (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DtoBenchmark {
+
+    private static final String REQUEST = """
+            {"action":"INSERT","source":"Aadhaar","data":{"aadhaar_number":"987654321012",\
+            "forename":"Ramesh","secondname":"Kumar","lastname":"Reddy","dob":"1998-05-10",\
+            "address":"Hyderabad, Telangana","gender":"Male"}}""";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private ObjectReader reader;
+    private ObjectReader mapReader;
+    private ObjectWriter writer;
+    private byte[] requestBytes;
+    private LinkageResponse response;
+
+    @Setup
+    public void setUp() {
+        reader = mapper.readerFor(LinkageRequest.class);
+        mapReader = mapper.readerFor(MapRequest.class);
+        writer = mapper.writerFor(LinkageResponse.class);
+        requestBytes = REQUEST.getBytes(StandardCharsets.UTF_8);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("aadhaarLinkageKey", UUID.randomUUID().toString());
+        summary.put("aadhaarCounter", "1");
+        summary.put("panCounter", "Data source not available");
+        summary.put("voterIdCounter", "Data source not available");
+        summary.put("dlCounter", "Data source not available");
+        response = LinkageResponse.success("Record inserted successfully", summary);
+    }
+
+    @Benchmark
+    public LinkageRequest readRequest() throws IOException {
+        return reader.readValue(requestBytes);
+    }
+
+    // Request shape before PersonData: data as Map<String, String>, action and source upper-cased per use
+    @Benchmark
+    public MapRequest readRequestAsMap(Blackhole bh) throws IOException {
+        MapRequest req = mapReader.readValue(requestBytes);
+        bh.consume(req.action.trim().toUpperCase(Locale.ROOT));
+        bh.consume(req.source.toUpperCase(Locale.ROOT));
+        return req;
+    }
+
+    @Benchmark
+    public byte[] writeResponse() throws IOException {
+        return writer.writeValueAsBytes(response);
+    }
+
+    public static class MapRequest {
+        public String action;
+        public String source;
+        public Map<String, String> data;
+        public String oldAadhaarLinkageKey;
+    }
+}
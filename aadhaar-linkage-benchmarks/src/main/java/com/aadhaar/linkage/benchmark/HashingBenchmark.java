@@ -0,0 +1,99 @@
+package com.aadhaar.linkage.benchmark;
+
+import com.aadhaar.linkage.dto.PersonData;
+import com.aadhaar.linkage.service.HashedIdentity;
+import com.aadhaar.linkage.service.IdentityHasher;
+import com.aadhaar.linkage.util.HashUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of hashing the PII of one request: the old hashCode-based hash(), the old HashUtil.sha256
+ * (new MessageDigest and per-byte hex strings on every call), and the IdentityHasher engine,
+ * plus normalizing and hashing a single field.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashingBenchmark {
+
+    private static final String[] FIELDS = {
+            "aadhaar_number", "pan_number", "voter_id", "dl_number",
+            "forename", "secondname", "lastname", "dob", "address"
+    };
+
+    private final IdentityHasher hasher = new IdentityHasher();
+    private Map<String, String> data;
+    private PersonData person;
+
+    @Setup
+    public void setUp() {
+        data = new HashMap<>();
+        data.put("aadhaar_number", "987654321012");
+        data.put("pan_number", "ABCDE1234F");
+        data.put("voter_id", "XYZ1234567");
+        data.put("dl_number", "AP1020190012345");
+        data.put("forename", "Ramesh");
+        data.put("secondname", "Kumar");
+        data.put("lastname", "Reddy");
+        data.put("dob", "1998-05-10");
+        data.put("address", "Hyderabad, Telangana");
+        data.put("gender", "Male");
+        person = PersonData.fromMap(data);
+    }
+
+    @Benchmark
+    public void legacyHashCode(Blackhole bh) {
+        for (String field : FIELDS) {
+            String value = data.get(field);
+            bh.consume(value == null ? null : Integer.toHexString(value.hashCode()));
+        }
+    }
+
+    @Benchmark
+    public void legacySha256(Blackhole bh) throws NoSuchAlgorithmException {
+        for (String field : FIELDS) {
+            bh.consume(legacySha256(data.get(field)));
+        }
+    }
+
+    @Benchmark
+    public HashedIdentity identityHasher() {
+        return hasher.hash(data);
+    }
+
+    @Benchmark
+    public HashedIdentity identityHasherTyped() {
+        return hasher.hash(person);
+    }
+
+    @Benchmark
+    public byte[] normalizeAndHashField() {
+        return HashUtil.sha256Bytes("  Hyderabad, Telangana ");
+    }
+
+    // HashUtil.sha256 as it was before the per-thread digest and hex table
+    private static String legacySha256(String input) throws NoSuchAlgorithmException {
+        if (input == null) return null;
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = digest.digest(input.trim().toLowerCase().getBytes(StandardCharsets.UTF_8));
+        StringBuilder hexString = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1)
+                hexString.append('0');
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+}
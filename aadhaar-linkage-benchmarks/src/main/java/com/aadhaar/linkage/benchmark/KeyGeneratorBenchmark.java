@@ -0,0 +1,34 @@
+package com.aadhaar.linkage.benchmark;
+
+import com.aadhaar.linkage.util.LinkageKeyGenerator;
+import com.aadhaar.linkage.util.TimeOrderedKeyGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minting one linkage key: random UUIDs (one shared SecureRandom) against time-ordered ones (per-thread DRBG),
+ * on four threads so contention shows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class KeyGeneratorBenchmark {
+
+    private final LinkageKeyGenerator random = LinkageKeyGenerator.random();
+    private final LinkageKeyGenerator timeOrdered = TimeOrderedKeyGenerator.shared();
+
+    @Benchmark
+    public String randomUuid() {
+        return random.next();
+    }
+
+    @Benchmark
+    public String timeOrderedUuid() {
+        return timeOrdered.next();
+    }
+}
@@ -0,0 +1,157 @@
+package com.aadhaar.linkage.benchmark;
+
+import com.aadhaar.linkage.AadhaarLinkageServiceApplication;
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.service.LinkageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link LinkageService#processRequest} per action, including hashing, the identity
+ * cache, Hibernate and an embedded in-memory H2, at several table sizes.
+ * <p>
+ * Each benchmark method runs in its own fork against a freshly preloaded table of {@code rows} people.
+ * INSERT grows the table while it runs; UPDATE and DELETE replace the rows they consume, so the size
+ * stays put. See the module README for how to run it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkageServiceBenchmark {
+
+    private static final int FILL_BATCH = 10_000;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private ConfigurableApplicationContext context;
+    private LinkageService service;
+    private JdbcTemplate jdbc;
+    private String[] keys;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void startService() {
+        context = new SpringApplicationBuilder(AadhaarLinkageServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                // Command-line arguments, so they take precedence over the service's application.properties
+                .run("--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                        "--linkage.cache.enabled=" + cache);
+        service = context.getBean(LinkageService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+        keys = fill(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopService() {
+        context.close();
+    }
+
+    @Benchmark
+    public LinkageResponse insert() {
+        return service.processRequest(request("INSERT", null, newPerson()));
+    }
+
+    @Benchmark
+    public LinkageResponse search() {
+        String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        return service.processRequest(request("SEARCH", key, null));
+    }
+
+    // Preloaded rows only carry the AADHAAR source, so each UPDATE retires the old key; the new key takes its slot
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public LinkageResponse update() {
+        int slot = nextSlot();
+        LinkageResponse response = service.processRequest(request("UPDATE", keys[slot], newPerson()));
+        keys[slot] = (String) ((Map<String, Object>) response.getData()).get("newAadhaarLinkageKey");
+        return response;
+    }
+
+    @Benchmark
+    public LinkageResponse delete(DeleteTarget target) {
+        return service.processRequest(request("DELETE", target.key, null));
+    }
+
+    /**
+     * One fresh row per DELETE invocation, inserted outside the measured time.
+     */
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        String key;
+
+        @Setup(Level.Invocation)
+        public void insertRow(LinkageServiceBenchmark benchmark) {
+            key = benchmark.fill(1)[0];
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+    private int nextSlot() {
+        cursor = (cursor + 1) % keys.length;
+        return cursor;
+    }
+
+    // Inserts rows straight through JDBC (same shape INSERT produces) and returns their keys
+    String[] fill(int count) {
+        String sql = "INSERT INTO person_identity (aadhaar_linkage_key, hashed_forename, hashed_dob, "
+                + "hashed_aadhaar_number, hashed_lastname, identity_match_key, "
+                + "source_counters, source_mask, version) "
+                + "VALUES (?, ?, ?, ?, ?, ?, 1, 1, 0)";
+        String[] inserted = new String[count];
+        for (int from = 0; from < count; from += FILL_BATCH) {
+            int n = Math.min(FILL_BATCH, count - from);
+            List<Object[]> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String key = UUID.randomUUID().toString();
+                inserted[from + i] = key;
+                batch.add(new Object[]{key, randomHash(), randomHash(), randomHash(), randomHash(), randomHash()});
+            }
+            jdbc.batchUpdate(sql, batch);
+        }
+        return inserted;
+    }
+
+    private static LinkageRequest request(String action, String key, Map<String, String> data) {
+        LinkageRequest req = new LinkageRequest();
+        req.setAction(action);
+        req.setSource("AADHAAR");
+        req.setOldAadhaarLinkageKey(key);
+        req.setData(data);
+        return req;
+    }
+
+    private static Map<String, String> newPerson() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Map.of(
+                "aadhaar_number", String.valueOf(random.nextLong(100_000_000_000L, 999_999_999_999L)),
+                "forename", UUID.randomUUID().toString(),
+                "lastname", "bench",
+                "dob", "1990-01-01",
+                "address", "Hyderabad, Telangana");
+    }
+
+    private static byte[] randomHash() {
+        byte[] hash = new byte[32];
+        ThreadLocalRandom.current().nextBytes(hash);
+        return hash;
+    }
+}
@@ -0,0 +1,36 @@
+package com.aadhaar.linkage.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+/**
+ * Drops the message Hibernate logs for an integrity-constraint violation (SQLState class 23), which quotes the
+ * offending values, i.e. identity hashes. The "SQL Error: n, SQLState: 23xxx" line before it is kept, and every
+ * other database error is logged in full. Installed by logback-spring.xml for all profiles but dev.
+ * <p>
+ * SqlExceptionHelper logs the SQLState line and then the message, on the same thread.
+ */
+public class ConstraintViolationLogFilter extends TurboFilter {
+
+    static final String LOGGER = "org.hibernate.engine.jdbc.spi.SqlExceptionHelper";
+
+    // Set by a SQLState line of class 23 until the message that follows it
+    private static final ThreadLocal<Boolean> VIOLATION = new ThreadLocal<>();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // format is null for isEnabled() checks
+        if (format == null || !LOGGER.equals(logger.getName())) return FilterReply.NEUTRAL;
+        if (level == Level.WARN) {
+            if (format.contains("SQLState: 23")) VIOLATION.set(Boolean.TRUE);
+            else VIOLATION.remove();
+        } else if (level == Level.ERROR && VIOLATION.get() != null) {
+            VIOLATION.remove();
+            return FilterReply.DENY;
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
@@ -0,0 +1,49 @@
+package com.aadhaar.linkage.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs which thread model serves requests, and warns when virtual threads were requested on a JDK
+ * that cannot provide them (Spring Boot then silently keeps the platform-thread pool).
+ */
+@Component
+public class ExecutionModeReport {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionModeReport.class);
+
+    static final int VIRTUAL_THREADS_JDK = 21;
+
+    private final boolean virtualRequested;
+    private final int tomcatThreads;
+    private final int poolSize;
+
+    public ExecutionModeReport(@Value("${spring.threads.virtual.enabled:false}") boolean virtualRequested,
+                               @Value("${server.tomcat.threads.max:200}") int tomcatThreads,
+                               @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this.virtualRequested = virtualRequested;
+        this.tomcatThreads = tomcatThreads;
+        this.poolSize = poolSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void report() {
+        if (virtualThreadsActive()) {
+            log.info("Serving requests on virtual threads; connection pool size {}", poolSize);
+        } else if (virtualRequested) {
+            log.warn("spring.threads.virtual.enabled=true needs JDK {}+, running on {}; "
+                            + "falling back to {} platform threads, connection pool size {}",
+                    VIRTUAL_THREADS_JDK, Runtime.version().feature(), tomcatThreads, poolSize);
+        } else {
+            log.info("Serving requests on up to {} platform threads; connection pool size {}", tomcatThreads, poolSize);
+        }
+    }
+
+    public boolean virtualThreadsActive() {
+        return virtualRequested && Runtime.version().feature() >= VIRTUAL_THREADS_JDK;
+    }
+}
@@ -0,0 +1,36 @@
+package com.aadhaar.linkage.config;
+
+import org.h2.tools.Server;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AbstractDependsOnBeanFactoryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Starts an H2 TCP server inside this node (h2-server profile), so the service talks to its database over
+ * the network the way it would to a real database server, and further nodes can share it.
+ * The server only accepts connections from this host.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "linkage.h2-server.embedded", havingValue = "true")
+public class H2ServerConfig {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public Server h2Server(@Value("${linkage.h2-server.port:9092}") int port,
+                           @Value("${linkage.h2-server.base-dir:./data}") String baseDir) throws SQLException {
+        return Server.createTcpServer("-tcpPort", String.valueOf(port), "-baseDir", baseDir, "-ifNotExists");
+    }
+
+    /**
+     * The connection pool (and Flyway) must not start before the server is listening.
+     */
+    @Bean
+    static AbstractDependsOnBeanFactoryPostProcessor dataSourceDependsOnH2Server() {
+        return new AbstractDependsOnBeanFactoryPostProcessor(DataSource.class, "h2Server") {
+        };
+    }
+}
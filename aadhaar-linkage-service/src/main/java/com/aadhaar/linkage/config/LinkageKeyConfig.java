@@ -0,0 +1,27 @@
+package com.aadhaar.linkage.config;
+
+import com.aadhaar.linkage.util.LinkageKeyGenerator;
+import com.aadhaar.linkage.util.TimeOrderedKeyGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Generator of new linkage keys (linkage.keys.generator): time-ordered (default) or random UUIDs.
+ * Declaring another {@link LinkageKeyGenerator} bean replaces both.
+ */
+@Configuration(proxyBeanMethods = false)
+public class LinkageKeyConfig {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LinkageKeyGenerator linkageKeyGenerator(@Value("${linkage.keys.generator:time-ordered}") String generator) {
+        switch (generator) {
+            case "time-ordered": return TimeOrderedKeyGenerator.shared();
+            case "random": return LinkageKeyGenerator.random();
+            default: throw new IllegalStateException(
+                    "Unknown linkage.keys.generator '" + generator + "' (expected time-ordered or random)");
+        }
+    }
+}
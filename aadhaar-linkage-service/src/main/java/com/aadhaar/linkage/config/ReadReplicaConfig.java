@@ -0,0 +1,66 @@
+package com.aadhaar.linkage.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Read replica (linkage.replica.enabled=true): the primary pool (spring.datasource.*) and a second pool for the
+ * replica (linkage.replica.datasource.*, Hikari property names) behind a {@link ReplicaRoutingDataSource}, so
+ * SEARCH traffic has its own connections and cannot starve the writers.
+ * <p>
+ * Replication itself is the database's job; Flyway migrates the primary only. For local testing with a second,
+ * unreplicated H2 database, linkage.replica.migrate=true migrates the replica as well.
+ * Not combined with sharded storage.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "linkage.replica.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties,
+                                              @Value("${linkage.shards.enabled:false}") boolean sharded) {
+        if (sharded)
+            throw new IllegalStateException("linkage.replica.enabled cannot be combined with linkage.shards.enabled");
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("linkage.replica.datasource")
+    public HikariDataSource replicaDataSource() {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName("linkage-replica-pool");
+        return ds;
+    }
+
+    @Bean
+    @Primary
+    public ReplicaRoutingDataSource dataSource(@Qualifier("primaryDataSource") HikariDataSource primary,
+                                               @Qualifier("replicaDataSource") HikariDataSource replica) {
+        return new ReplicaRoutingDataSource(primary, replica);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy replicaMigration(ReplicaRoutingDataSource dataSource,
+                                                    @Value("${linkage.replica.migrate:false}") boolean migrateReplica) {
+        return flyway -> {
+            flyway.migrate();
+            if (migrateReplica) {
+                Flyway.configure()
+                        .configuration(flyway.getConfiguration())
+                        .dataSource(dataSource.replica())
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+}
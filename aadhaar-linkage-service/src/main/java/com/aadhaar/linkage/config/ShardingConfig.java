@@ -0,0 +1,78 @@
+package com.aadhaar.linkage.config;
+
+import com.aadhaar.linkage.service.ShardRebalancer;
+import com.aadhaar.linkage.service.ShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash-partitioned storage (linkage.shards.enabled=true): one connection pool per shard behind a
+ * {@link ShardRoutingDataSource}, so the single JPA setup reads and writes whichever shard the request was
+ * routed to. Spring Boot's own pool backs off, and Flyway migrates every shard instead of only the first.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "linkage.shards.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    @Bean
+    @Primary
+    public ShardRoutingDataSource dataSource(DataSourceProperties properties, ShardRouter router,
+                                             MeterRegistry meterRegistry,
+                                             @Value("${linkage.shards.url-template}") String urlTemplate,
+                                             @Value("${linkage.shards.pool-size:5}") int poolSize) {
+        List<HikariDataSource> shards = new ArrayList<>(router.count());
+        for (int shard = 0; shard < router.count(); shard++) {
+            HikariDataSource ds = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(urlTemplate.replace("{shard}", String.valueOf(shard)))
+                    .username(properties.getUsername())
+                    .password(properties.getPassword())
+                    .build();
+            ds.setPoolName("linkage-shard-" + shard);
+            ds.setMaximumPoolSize(poolSize);
+            ds.setMinimumIdle(poolSize);
+            // hikaricp.connections.*{pool=linkage-shard-N}
+            ds.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            shards.add(ds);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    @Bean
+    public FlywayMigrationStrategy shardedMigration(ShardRoutingDataSource dataSource) {
+        return flyway -> dataSource.shards().forEach(shard -> Flyway.configure()
+                .configuration(flyway.getConfiguration())
+                .dataSource(shard)
+                .load()
+                .migrate());
+    }
+
+    /**
+     * Rebalancing tool: start with --linkage.shards.rebalance=true (and the new linkage.shards.count) while no
+     * other node is writing; the application moves misplaced records and exits.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "linkage.shards.rebalance", havingValue = "true")
+    public ApplicationRunner shardRebalanceRunner(ShardRebalancer rebalancer, ConfigurableApplicationContext context) {
+        return args -> {
+            rebalancer.rebalance();
+            SpringApplication.exit(context);
+        };
+    }
+}
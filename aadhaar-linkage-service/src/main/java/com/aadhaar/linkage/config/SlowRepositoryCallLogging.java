@@ -0,0 +1,47 @@
+package com.aadhaar.linkage.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs Spring Data repository calls that take longer than linkage.logging.slow-repository-call.
+ * <p>
+ * Only the repository, method, outcome and duration are logged. Hibernate's own slow-query log is not used
+ * because it prints the JDBC statement's toString(), which for H2 and PostgreSQL includes the bind
+ * parameters, i.e. the stored identity hashes.
+ */
+@Component
+public class SlowRepositoryCallLogging implements BeanPostProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowRepositoryCallLogging.class);
+
+    private final RepositoryMethodInvocationListener listener;
+
+    public SlowRepositoryCallLogging(@Value("${linkage.logging.slow-repository-call:200ms}") Duration threshold) {
+        long thresholdNanos = threshold.toNanos();
+        this.listener = invocation -> {
+            long nanos = invocation.getDuration(TimeUnit.NANOSECONDS);
+            if (nanos >= thresholdNanos) {
+                log.warn("Slow repository call {}.{} took {} ms ({})",
+                        invocation.getRepositoryInterface().getSimpleName(), invocation.getMethod().getName(),
+                        TimeUnit.NANOSECONDS.toMillis(nanos), invocation.getResult().getState());
+            }
+        };
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addInvocationListener(listener));
+        }
+        return bean;
+    }
+}
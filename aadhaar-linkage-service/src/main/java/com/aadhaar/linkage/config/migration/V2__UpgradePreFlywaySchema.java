@@ -0,0 +1,195 @@
+package com.aadhaar.linkage.config.migration;
+
+import com.aadhaar.linkage.util.HashUtil;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.sql.*;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Brings a person_identity table created before Flyway (by Hibernate ddl-auto on H2) up to the V1 layout.
+ * Such databases are baselined at version 1, so this is the first migration they run; on databases
+ * created by V1 it finds nothing to do.
+ * <ul>
+ *   <li>hash columns from hex VARCHAR to BINARY(32). 64-character hex values (SHA-256) are decoded
+ *   as-is. Anything else (the old 32-bit hashCode values) is re-hashed with SHA-256 so it stays
+ *   distinct and fixed-width; such rows could not match a fresh lookup before this migration either.</li>
+ *   <li>the optimistic-lock VERSION column, added NOT NULL with 0 for existing rows.</li>
+ *   <li>the unique IDENTITY_MATCH_KEY column. Where older versions left several rows for the same
+ *   (forename, dob), only the most recently updated one gets the key, which is the row INSERT would
+ *   have matched anyway; the others stay reachable by linkage key.</li>
+ *   <li>the V1 indexes and unique constraint, which ddl-auto used to create.</li>
+ * </ul>
+ * Registered as a bean; Spring Boot hands JavaMigration beans to Flyway.
+ */
+@Component
+public class V2__UpgradePreFlywaySchema extends BaseJavaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(V2__UpgradePreFlywaySchema.class);
+
+    static final String TABLE = "PERSON_IDENTITY";
+
+    static final List<String> HASH_COLUMNS = List.of(
+            "HASHED_AADHAAR_NUMBER", "HASHED_PAN_NUMBER", "HASHED_VOTER_ID", "HASHED_DL_NUMBER",
+            "HASHED_FORENAME", "HASHED_SECONDNAME", "HASHED_LASTNAME", "HASHED_DOB", "HASHED_ADDRESS"
+    );
+
+    // Indexes over the hash columns; recreated below once the columns are binary
+    private static final List<String> HASH_INDEXES = List.of(
+            "IDX_PERSON_MATCH", "IDX_PERSON_AADHAAR_MATCH", "IDX_PERSON_PAN", "IDX_PERSON_VOTER", "IDX_PERSON_DL"
+    );
+
+    private static final int BATCH_SIZE = 1_000;
+
+    @Override
+    public void migrate(Context context) throws SQLException {
+        Connection con = context.getConnection();
+        // Only H2 databases predate Flyway
+        if (!"H2".equalsIgnoreCase(con.getMetaData().getDatabaseProductName()) || !hasTable(con)) return;
+
+        migrateHashColumns(con);
+        addVersionColumn(con);
+        addIdentityMatchKey(con);
+        createIndexes(con);
+    }
+
+    private void addVersionColumn(Connection con) throws SQLException {
+        if (columnType(con, "VERSION") != null) return;
+
+        log.info("Adding optimistic-lock VERSION column to {}", TABLE);
+        try (Statement st = con.createStatement()) {
+            st.execute("ALTER TABLE " + TABLE + " ADD COLUMN VERSION BIGINT DEFAULT 0 NOT NULL");
+        }
+    }
+
+    private void addIdentityMatchKey(Connection con) throws SQLException {
+        if (columnType(con, "IDENTITY_MATCH_KEY") != null) return;
+
+        log.info("Adding IDENTITY_MATCH_KEY column to {}", TABLE);
+        long rows = 0;
+        try (Statement st = con.createStatement()) {
+            st.execute("ALTER TABLE " + TABLE + " ADD COLUMN IDENTITY_MATCH_KEY BINARY(32)");
+
+            try (Statement select = con.createStatement();
+                 PreparedStatement update = con.prepareStatement(
+                         "UPDATE " + TABLE + " SET IDENTITY_MATCH_KEY = ? WHERE AADHAAR_LINKAGE_KEY = ?")) {
+                select.setFetchSize(BATCH_SIZE);
+                try (ResultSet rs = select.executeQuery(
+                        "SELECT HASHED_FORENAME, HASHED_DOB, AADHAAR_LINKAGE_KEY FROM " + TABLE
+                                + " WHERE HASHED_FORENAME IS NOT NULL AND HASHED_DOB IS NOT NULL"
+                                + " ORDER BY HASHED_FORENAME, HASHED_DOB, UPDATED_AT DESC")) {
+                    byte[] previous = null;
+                    while (rs.next()) {
+                        // Same digest as IdentityHash.combine(forename, dob)
+                        byte[] matchKey = HashUtil.sha256Bytes(rs.getBytes(1), rs.getBytes(2));
+                        if (Arrays.equals(matchKey, previous)) continue;
+                        previous = matchKey;
+                        update.setBytes(1, matchKey);
+                        update.setString(2, rs.getString(3));
+                        update.addBatch();
+                        if (++rows % BATCH_SIZE == 0) update.executeBatch();
+                    }
+                }
+                update.executeBatch();
+            }
+        }
+        log.info("Assigned identity-match keys to {} rows", rows);
+    }
+
+    private void createIndexes(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("DROP INDEX IF EXISTS IDX_PERSON_MATCH");
+            st.execute("CREATE INDEX IF NOT EXISTS IDX_PERSON_AADHAAR_MATCH ON " + TABLE
+                    + " (HASHED_AADHAAR_NUMBER, HASHED_DOB, HASHED_FORENAME, HASHED_LASTNAME)");
+            st.execute("CREATE INDEX IF NOT EXISTS IDX_PERSON_PAN ON " + TABLE + " (HASHED_PAN_NUMBER)");
+            st.execute("CREATE INDEX IF NOT EXISTS IDX_PERSON_VOTER ON " + TABLE + " (HASHED_VOTER_ID)");
+            st.execute("CREATE INDEX IF NOT EXISTS IDX_PERSON_DL ON " + TABLE + " (HASHED_DL_NUMBER)");
+            st.execute("ALTER TABLE " + TABLE + " ADD CONSTRAINT IF NOT EXISTS UK_PERSON_IDENTITY_MATCH"
+                    + " UNIQUE (IDENTITY_MATCH_KEY)");
+        }
+    }
+
+    private void migrateHashColumns(Connection con) throws SQLException {
+        List<String> textColumns = HASH_COLUMNS.stream()
+                .filter(column -> isCharacterColumn(con, column))
+                .toList();
+        if (textColumns.isEmpty()) return;
+
+        log.info("Converting {} hash columns of {} from hex text to BINARY(32)", textColumns.size(), TABLE);
+        try (Statement st = con.createStatement()) {
+            for (String index : HASH_INDEXES) {
+                st.execute("DROP INDEX IF EXISTS " + index);
+            }
+            migrateColumns(con, st, textColumns);
+        }
+    }
+
+    // Each ALTER rewrites the table, so all columns are added, filled in one scan and dropped together
+    private void migrateColumns(Connection con, Statement st, List<String> columns) throws SQLException {
+        List<String> binColumns = columns.stream().map(c -> c + "_BIN").toList();
+        st.execute("ALTER TABLE " + TABLE + " ADD ("
+                + binColumns.stream().map(c -> c + " BINARY(32)").collect(Collectors.joining(", ")) + ")");
+
+        long rows = 0;
+        String assignments = binColumns.stream().map(c -> c + " = ?").collect(Collectors.joining(", "));
+        try (Statement select = con.createStatement();
+             PreparedStatement update = con.prepareStatement(
+                     "UPDATE " + TABLE + " SET " + assignments + " WHERE AADHAAR_LINKAGE_KEY = ?")) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet rs = select.executeQuery(
+                    "SELECT " + String.join(", ", columns) + ", AADHAAR_LINKAGE_KEY FROM " + TABLE)) {
+                int keyIndex = columns.size() + 1;
+                while (rs.next()) {
+                    for (int i = 1; i <= columns.size(); i++) {
+                        String stored = rs.getString(i);
+                        update.setBytes(i, stored == null ? null : toDigest(stored));
+                    }
+                    update.setString(keyIndex, rs.getString(keyIndex));
+                    update.addBatch();
+                    if (++rows % BATCH_SIZE == 0) update.executeBatch();
+                }
+            }
+            update.executeBatch();
+        }
+
+        st.execute("ALTER TABLE " + TABLE + " DROP COLUMN " + String.join(", ", columns));
+        for (String column : columns) {
+            st.execute("ALTER TABLE " + TABLE + " ALTER COLUMN " + column + "_BIN RENAME TO " + column);
+        }
+        log.info("Converted {} rows", rows);
+    }
+
+    static byte[] toDigest(String stored) {
+        if (stored.length() == 2 * HashUtil.SHA256_LENGTH && stored.chars().allMatch(HexFormat::isHexDigit)) {
+            return HexFormat.of().parseHex(stored);
+        }
+        return HashUtil.sha256Bytes(stored);
+    }
+
+    private static boolean isCharacterColumn(Connection con, String column) {
+        String type = columnType(con, column);
+        return type != null && type.contains("CHAR");
+    }
+
+    private static String columnType(Connection con, String column) {
+        try (ResultSet rs = con.getMetaData().getColumns(null, null, TABLE, column)) {
+            return rs.next() ? rs.getString("TYPE_NAME").toUpperCase(Locale.ROOT) : null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot inspect column " + column + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean hasTable(Connection con) throws SQLException {
+        try (ResultSet rs = con.getMetaData().getTables(null, null, TABLE, null)) {
+            return rs.next();
+        }
+    }
+}
@@ -2,11 +2,39 @@ package com.aadhaar.linkage.controller;
 
 import com.aadhaar.linkage.dto.LinkageRequest;
 import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.service.DocumentLookupService;
+import com.aadhaar.linkage.service.IdentityCache;
+import com.aadhaar.linkage.service.LinkageBatchService;
+import com.aadhaar.linkage.service.LinkageEventRelay;
+import com.aadhaar.linkage.service.LinkageHistory;
 import com.aadhaar.linkage.service.LinkageService;
+import com.aadhaar.linkage.service.PersonViewCache;
+import com.aadhaar.linkage.service.RecordExportService;
+import com.aadhaar.linkage.util.MappedJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Single endpoint controller. Uses explicit constructor injection to avoid Lombok issues.
  */
@@ -14,10 +42,31 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/api/v1/person")
 public class LinkageController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final LinkageService linkageService;
+    private final LinkageBatchService batchService;
+    private final IdentityCache identityCache;
+    private final RecordExportService exportService;
+    private final DocumentLookupService lookupService;
+    private final LinkageHistory history;
+    private final PersonViewCache views;
+    private final ObjectProvider<LinkageEventRelay> eventRelay;
+    private final ObjectMapper objectMapper;
 
-    public LinkageController(LinkageService linkageService) {
+    public LinkageController(LinkageService linkageService, LinkageBatchService batchService,
+                             IdentityCache identityCache, RecordExportService exportService,
+                             DocumentLookupService lookupService, LinkageHistory history, PersonViewCache views,
+                             ObjectProvider<LinkageEventRelay> eventRelay, ObjectMapper objectMapper) {
         this.linkageService = linkageService;
+        this.batchService = batchService;
+        this.identityCache = identityCache;
+        this.exportService = exportService;
+        this.lookupService = lookupService;
+        this.history = history;
+        this.views = views;
+        this.eventRelay = eventRelay;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/manage")
@@ -26,6 +75,164 @@ public class LinkageController {
         return ResponseEntity.ok(response);
     }
 
-}
+    /**
+     * SEARCH by linkage key as a cacheable GET. The ETag is the record's version: a matching If-None-Match is
+     * answered 304 without a body, and the serialized response is kept server-side, so repeated lookups neither
+     * load the record nor write JSON. Unknown keys are 404.
+     */
+    @GetMapping("/{key}")
+    public ResponseEntity<byte[]> person(@PathVariable String key,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws IOException {
+        PersonViewCache.View view = views.get(key);
+        if (view == null) {
+            long generation = views.generation(key);
+            LinkageRequest search = new LinkageRequest();
+            search.setAction("SEARCH");
+            search.setOldAadhaarLinkageKey(key);
+            LinkageResponse response = linkageService.processRequest(search);
+            if ("ERROR".equals(response.getStatus())) {
+                HttpStatus status = response.isNotFound() ? HttpStatus.NOT_FOUND : HttpStatus.SERVICE_UNAVAILABLE;
+                return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON)
+                        .body(objectMapper.writeValueAsBytes(response));
+            }
+            view = views.put(key, generation, response);
+        }
+        if (view.matches(ifNoneMatch))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(view.etag()).cacheControl(CacheControl.noCache()).build();
+        return ResponseEntity.ok().eTag(view.etag()).cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON).body(view.body());
+    }
+
+    /**
+     * Batch form of /manage. Results are returned in request order, one per item.
+     */
+    @PostMapping(value = "/manage/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<LinkageResponse> processBatch(@RequestBody List<LinkageRequest> requests) {
+        List<LinkageResponse> results = batchService.processBatch(requests);
+        long failed = results.stream().filter(r -> "ERROR".equals(r.getStatus())).count();
+        return ResponseEntity.ok(LinkageResponse.success(
+                "Batch processed: " + results.size() + " requests, " + failed + " failed",
+                results
+        ));
+    }
 
+    /**
+     * Streaming batch: one LinkageRequest JSON object per line in, one LinkageResponse per line out.
+     * Neither side is buffered whole, so feeds of any size can be posted in a single call.
+     * A line that is not a valid request is answered with an ERROR line of its own.
+     */
+    @PostMapping(value = "/manage/batch", consumes = NDJSON, produces = NDJSON)
+    public void processBatchStream(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        OutputStream out = response.getOutputStream();
+        ObjectWriter writer = objectMapper.writerFor(LinkageResponse.class);
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            batchService.processLines(lines, objectMapper.readerFor(LinkageRequest.class), result -> {
+                try {
+                    out.write(writer.writeValueAsBytes(result));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        out.flush();
+    }
+
+    /**
+     * Linkage keys of the records holding the given documents, e.g. {"pan_number": "ABCDE1234F"}.
+     * POST rather than GET so that document numbers stay out of URLs and access logs.
+     */
+    @PostMapping("/lookup")
+    public ResponseEntity<LinkageResponse> lookup(@RequestBody Map<String, String> documents) {
+        return ResponseEntity.ok(lookupService.lookup(documents));
+    }
+
+    /**
+     * Batch form of /lookup. Results are returned in request order, one per document set.
+     */
+    @PostMapping("/lookup/batch")
+    public ResponseEntity<LinkageResponse> lookupBatch(@RequestBody List<Map<String, String>> batch) {
+        return ResponseEntity.ok(lookupService.lookupBatch(batch));
+    }
 
+    /**
+     * Counts records by the sources they hold, e.g. {@code ?with=PAN&without=VOTER}.
+     */
+    @GetMapping("/coverage")
+    public ResponseEntity<LinkageResponse> coverage(@RequestParam(defaultValue = "") List<String> with,
+                                                    @RequestParam(defaultValue = "") List<String> without) {
+        return ResponseEntity.ok(lookupService.coverage(with, without));
+    }
+
+    /**
+     * Every key the person behind {@code key} has had, oldest first, with the fields each UPDATE changed.
+     */
+    @GetMapping("/{key}/lineage")
+    public ResponseEntity<LinkageResponse> lineage(@PathVariable String key) {
+        return ResponseEntity.ok(history.lineage(key));
+    }
+
+    /**
+     * Streams all records in linkage-key order as NDJSON or CSV; with {@code since}, only those updated after it.
+     * The X-Export-Watermark header carries the value to pass as {@code since} on the next incremental export.
+     */
+    @GetMapping("/export")
+    public void export(@RequestParam(defaultValue = "ndjson") String format,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                       HttpServletResponse response) throws IOException {
+        RecordExportService.Format parsed = RecordExportService.Format.parse(format).orElse(null);
+        if (parsed == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unsupported export format: " + format);
+            return;
+        }
+        LocalDateTime watermark = exportService.watermark();
+        response.setContentType(parsed == RecordExportService.Format.CSV ? "text/csv;charset=UTF-8" : NDJSON);
+        response.setHeader("X-Export-Watermark", watermark.toString());
+        exportService.export(parsed, since, watermark, response.getOutputStream());
+    }
+
+    /**
+     * Tails the change-event journal: up to {@code limit} events from {@code offset}, one per line as
+     * {"offset":..,"nextOffset":..,"event":{..}}. X-Next-Offset is where the next call continues; an
+     * offset that is not the start of an event is answered with 400.
+     */
+    @GetMapping(value = "/events", produces = NDJSON)
+    public void events(@RequestParam(defaultValue = "0") long offset,
+                       @RequestParam(defaultValue = "1000") int limit,
+                       HttpServletResponse response) throws IOException {
+        LinkageEventRelay relay = eventRelay.getIfAvailable();
+        if (relay == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Event log is disabled (linkage.events.enabled)");
+            return;
+        }
+        List<MappedJournal.Entry> entries;
+        try {
+            entries = relay.read(offset, Math.max(1, Math.min(limit, 10_000)));
+        } catch (IllegalArgumentException e) {
+            // Offsets come from earlier responses (offset, nextOffset, X-Next-Offset); anything else is rejected
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        long next = entries.isEmpty() ? Math.max(offset, 0) : entries.get(entries.size() - 1).nextOffset();
+        response.setContentType(NDJSON);
+        response.setHeader("X-Next-Offset", String.valueOf(next));
+        OutputStream out = response.getOutputStream();
+        for (MappedJournal.Entry entry : entries) {
+            out.write(("{\"offset\":" + entry.offset() + ",\"nextOffset\":" + entry.nextOffset() + ",\"event\":")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(entry.payload());
+            out.write('}');
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<LinkageResponse> cacheStats() {
+        return ResponseEntity.ok(LinkageResponse.success("Identity cache statistics", identityCache.stats()));
+    }
+
+}
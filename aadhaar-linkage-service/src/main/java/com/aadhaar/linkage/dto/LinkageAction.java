@@ -0,0 +1,22 @@
+package com.aadhaar.linkage.dto;
+
+/**
+ * The {@code action} of a /manage request.
+ */
+public enum LinkageAction {
+    INSERT, UPDATE, DELETE, SEARCH;
+
+    private static final LinkageAction[] VALUES = values();
+
+    /**
+     * Case-insensitive, surrounding blanks ignored; {@code null} if not an action.
+     */
+    public static LinkageAction parse(String value) {
+        if (value == null) return null;
+        String name = value.strip();
+        for (LinkageAction a : VALUES) {
+            if (a.name().equalsIgnoreCase(name)) return a;
+        }
+        return null;
+    }
+}
@@ -1,5 +1,7 @@
 package com.aadhaar.linkage.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
 import lombok.*;
 
@@ -8,8 +10,6 @@ import java.util.Map;
 @Getter
 @Setter
 @NoArgsConstructor
-@AllArgsConstructor
-@Builder
 @ToString
 public class LinkageRequest {
 
@@ -19,18 +19,38 @@ public class LinkageRequest {
     @NotBlank(message = "Source must be provided")
     private String source; // Aadhaar | PAN | Voter | Driving
 
-    // Generic container for person data
-    private Map<String, String> data;
+    // Person details, parsed straight into fixed fields; still read and written as a map by getData / setData
+    private PersonData data;
 
     // Used in update/delete/search
     private String oldAadhaarLinkageKey;
 
+    // Parsed once when set; null when not a known action / source
+    @JsonIgnore
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private LinkageAction actionType;
+
+    @JsonIgnore
+    @ToString.Exclude
+    @Setter(AccessLevel.NONE)
+    private LinkageSource sourceType;
+
+	@Builder
+	public LinkageRequest(String action, String source, Map<String, String> data, String oldAadhaarLinkageKey) {
+		setAction(action);
+		setSource(source);
+		setData(data);
+		this.oldAadhaarLinkageKey = oldAadhaarLinkageKey;
+	}
+
 	public String getAction() {
 		return action;
 	}
 
 	public void setAction(String action) {
 		this.action = action;
+		this.actionType = LinkageAction.parse(action);
 	}
 
 	public String getSource() {
@@ -39,13 +59,37 @@ public class LinkageRequest {
 
 	public void setSource(String source) {
 		this.source = source;
+		this.sourceType = LinkageSource.parse(source);
+	}
+
+	public LinkageAction getActionType() {
+		return actionType;
+	}
+
+	public LinkageSource getSourceType() {
+		return sourceType;
 	}
 
+	/**
+	 * Map form ("forename" -> "...", ...), as before the typed {@link PersonData}; a copy, built per call.
+	 */
+	@JsonProperty("data")
 	public Map<String, String> getData() {
-		return data;
+		return data == null ? null : data.toMap();
 	}
 
+	@JsonIgnore
 	public void setData(Map<String, String> data) {
+		this.data = PersonData.fromMap(data);
+	}
+
+	@JsonIgnore
+	public PersonData getPersonData() {
+		return data;
+	}
+
+	@JsonProperty("data")
+	public void setPersonData(PersonData data) {
 		this.data = data;
 	}
 
@@ -56,6 +100,6 @@ public class LinkageRequest {
 	public void setOldAadhaarLinkageKey(String oldAadhaarLinkageKey) {
 		this.oldAadhaarLinkageKey = oldAadhaarLinkageKey;
 	}
-    
-    
+
+
 }
@@ -1,5 +1,7 @@
 package com.aadhaar.linkage.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 /**
  * Simple POJO used as API response. Plain Java (no Lombok) so builder() issues don't block compilation.
  */
@@ -7,6 +9,9 @@ public class LinkageResponse {
     private String status;
     private String message;
     private Object data;
+    // An ERROR because the key named by the request does not exist (GET /{key} answers it with 404)
+    @JsonIgnore
+    private boolean notFound;
 
     public LinkageResponse() {}
 
@@ -25,6 +30,11 @@ public class LinkageResponse {
     public static LinkageResponse error(String message) {
         return new LinkageResponse("ERROR", message, null);
     }
+    public static LinkageResponse notFound(String message) {
+        LinkageResponse response = error(message);
+        response.notFound = true;
+        return response;
+    }
 
     // getters / setters
     public String getStatus() { return status; }
@@ -35,4 +45,7 @@ public class LinkageResponse {
 
     public Object getData() { return data; }
     public void setData(Object data) { this.data = data; }
+
+    @JsonIgnore
+    public boolean isNotFound() { return notFound; }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.aadhaar.linkage.dto;
+
+import com.aadhaar.linkage.model.SourceCounters;
+
+/**
+ * The {@code source} of a /manage request: the document feed the request comes from.
+ * <p>
+ * Also the registry of sources for storage: a source's ordinal is its lane in person_identity.source_counters
+ * and its bit in source_mask ({@link SourceCounters}), so new sources are only ever appended.
+ */
+public enum LinkageSource {
+    AADHAAR("aadhaarCounter"), PAN("panCounter"), VOTER("voterIdCounter"), DRIVING("dlCounter");
+
+    private static final LinkageSource[] VALUES = values();
+
+    static {
+        if (VALUES.length > SourceCounters.SLOTS)
+            throw new IllegalStateException("source_counters holds at most " + SourceCounters.SLOTS + " sources");
+    }
+
+    private final String counterName;
+
+    LinkageSource(String counterName) {
+        this.counterName = counterName;
+    }
+
+    /**
+     * Name of this source's counter in responses, e.g. "panCounter".
+     */
+    public String counterName() {
+        return counterName;
+    }
+
+    /**
+     * Bit of this source in the presence bitmap.
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Case-insensitive, surrounding blanks ignored; {@code null} if not a source.
+     */
+    public static LinkageSource parse(String value) {
+        if (value == null) return null;
+        String name = value.strip();
+        for (LinkageSource s : VALUES) {
+            if (s.name().equalsIgnoreCase(name)) return s;
+        }
+        return null;
+    }
+}
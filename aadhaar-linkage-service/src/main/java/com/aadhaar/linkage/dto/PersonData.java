@@ -0,0 +1,154 @@
+package com.aadhaar.linkage.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Person details of a request ("data"), in fixed fields instead of a map.
+ * <p>
+ * Read by a streaming deserializer that assigns each JSON field straight to its slot, so a request allocates no
+ * map, no entries and no key strings. It accepts what the old {@code Map<String, String>} form did: scalars of
+ * any type become their text, unknown fields and nested values are skipped.
+ */
+@JsonDeserialize(using = PersonData.Reader.class)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PersonData {
+
+    private String aadhaarNumber;
+    private String panNumber;
+    private String voterId;
+    private String dlNumber;
+    private String forename;
+    private String secondname;
+    private String lastname;
+    private String dob;
+    private String address;
+    private String gender;
+
+    public PersonData() {}
+
+    /**
+     * From the map form ("aadhaar_number", "forename", ...); unknown keys are ignored.
+     */
+    public static PersonData fromMap(Map<String, String> data) {
+        if (data == null) return null;
+        PersonData p = new PersonData();
+        data.forEach(p::set);
+        return p;
+    }
+
+    /**
+     * The supplied fields under their JSON names.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        put(map, "aadhaar_number", aadhaarNumber);
+        put(map, "pan_number", panNumber);
+        put(map, "voter_id", voterId);
+        put(map, "dl_number", dlNumber);
+        put(map, "forename", forename);
+        put(map, "secondname", secondname);
+        put(map, "lastname", lastname);
+        put(map, "dob", dob);
+        put(map, "address", address);
+        put(map, "gender", gender);
+        return map;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return aadhaarNumber == null && panNumber == null && voterId == null && dlNumber == null
+                && forename == null && secondname == null && lastname == null && dob == null
+                && address == null && gender == null;
+    }
+
+    /**
+     * Sets a field by its JSON name.
+     *
+     * @return false if there is no such field
+     */
+    public boolean set(String field, String value) {
+        switch (field) {
+            case "aadhaar_number": aadhaarNumber = value; return true;
+            case "pan_number": panNumber = value; return true;
+            case "voter_id": voterId = value; return true;
+            case "dl_number": dlNumber = value; return true;
+            case "forename": forename = value; return true;
+            case "secondname": secondname = value; return true;
+            case "lastname": lastname = value; return true;
+            case "dob": dob = value; return true;
+            case "address": address = value; return true;
+            case "gender": gender = value; return true;
+            default: return false;
+        }
+    }
+
+    // ---------------- JSON ----------------
+    public static class Reader extends JsonDeserializer<PersonData> {
+        @Override
+        public PersonData deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (!p.isExpectedStartObjectToken())
+                return (PersonData) ctxt.handleUnexpectedToken(PersonData.class, p);
+            PersonData data = new PersonData();
+            String field;
+            while ((field = p.nextFieldName()) != null) {
+                JsonToken value = p.nextToken();
+                if (value.isStructStart()) {
+                    p.skipChildren();
+                } else {
+                    data.set(field, value == JsonToken.VALUE_NULL ? null : p.getText());
+                }
+            }
+            return data;
+        }
+    }
+
+    private static void put(Map<String, String> map, String field, String value) {
+        if (value != null) map.put(field, value);
+    }
+
+    // ---------------- ACCESSORS ----------------
+    @JsonProperty("aadhaar_number")
+    public String getAadhaarNumber() { return aadhaarNumber; }
+    public void setAadhaarNumber(String aadhaarNumber) { this.aadhaarNumber = aadhaarNumber; }
+
+    @JsonProperty("pan_number")
+    public String getPanNumber() { return panNumber; }
+    public void setPanNumber(String panNumber) { this.panNumber = panNumber; }
+
+    @JsonProperty("voter_id")
+    public String getVoterId() { return voterId; }
+    public void setVoterId(String voterId) { this.voterId = voterId; }
+
+    @JsonProperty("dl_number")
+    public String getDlNumber() { return dlNumber; }
+    public void setDlNumber(String dlNumber) { this.dlNumber = dlNumber; }
+
+    public String getForename() { return forename; }
+    public void setForename(String forename) { this.forename = forename; }
+
+    public String getSecondname() { return secondname; }
+    public void setSecondname(String secondname) { this.secondname = secondname; }
+
+    public String getLastname() { return lastname; }
+    public void setLastname(String lastname) { this.lastname = lastname; }
+
+    public String getDob() { return dob; }
+    public void setDob(String dob) { this.dob = dob; }
+
+    public String getAddress() { return address; }
+    public void setAddress(String address) { this.address = address; }
+
+    public String getGender() { return gender; }
+    public void setGender(String gender) { this.gender = gender; }
+}
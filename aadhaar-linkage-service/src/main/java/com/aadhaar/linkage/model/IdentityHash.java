@@ -0,0 +1,79 @@
+package com.aadhaar.linkage.model;
+
+import com.aadhaar.linkage.util.HashUtil;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * A 32-byte SHA-256 digest of one identity field, stored as BINARY(32).
+ * Immutable; the wrapped array is never handed out.
+ */
+public final class IdentityHash {
+
+    public static final int LENGTH = HashUtil.SHA256_LENGTH;
+
+    private final byte[] bytes;
+
+    private IdentityHash(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Takes ownership of a freshly computed digest without copying it.
+     */
+    public static IdentityHash wrap(byte[] digest) {
+        if (digest == null) return null;
+        if (digest.length != LENGTH)
+            throw new IllegalArgumentException("Identity hash must be " + LENGTH + " bytes, got " + digest.length);
+        return new IdentityHash(digest);
+    }
+
+    public static IdentityHash fromBytes(byte[] bytes) {
+        return bytes == null ? null : wrap(bytes.clone());
+    }
+
+    public static IdentityHash fromHex(String hex) {
+        return hex == null ? null : wrap(HexFormat.of().parseHex(hex));
+    }
+
+    // Shared with the JPA converter to avoid a copy per bound parameter
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Digest of two hashes taken together, e.g. the identity-match key over (forename, dob).
+     */
+    public static IdentityHash combine(IdentityHash first, IdentityHash second) {
+        if (first == null || second == null) return null;
+        return wrap(HashUtil.sha256Bytes(first.bytes, second.bytes));
+    }
+
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    public String toHex() {
+        return HashUtil.toHex(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof IdentityHash other && Arrays.equals(bytes, other.bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        // Digest bytes are uniformly distributed, so the leading four are as good as a full hash
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Never the digest, so a hash cannot reach a log line by accident; use {@link #toHex()} where it is needed.
+     */
+    @Override
+    public String toString() {
+        return "IdentityHash[redacted]";
+    }
+}
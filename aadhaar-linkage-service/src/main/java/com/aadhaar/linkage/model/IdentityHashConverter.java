@@ -0,0 +1,18 @@
+package com.aadhaar.linkage.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+@Converter(autoApply = true)
+public class IdentityHashConverter implements AttributeConverter<IdentityHash, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(IdentityHash attribute) {
+        return attribute == null ? null : attribute.bytes();
+    }
+
+    @Override
+    public IdentityHash convertToEntityAttribute(byte[] dbData) {
+        return dbData == null ? null : IdentityHash.wrap(dbData);
+    }
+}
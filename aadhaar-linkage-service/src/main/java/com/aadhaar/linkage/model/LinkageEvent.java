@@ -0,0 +1,147 @@
+package com.aadhaar.linkage.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row for one linkage mutation, relayed to the event journal after commit.
+ * <ul>
+ *     <li>INSERT: a new person ({@code oldKey} null) or a source joining one ({@code oldKey = newKey}).</li>
+ *     <li>UPDATE: the source moved from {@code oldKey} to the freshly created {@code newKey}.</li>
+ *     <li>DELETE: the source was removed from {@code oldKey}; {@code newKey} is null once nothing is left.</li>
+ * </ul>
+ * The deltas are the counter changes of the record the event is about: the new record for INSERT,
+ * the old one for UPDATE and DELETE.
+ */
+@Entity
+@Table(name = "linkage_event")
+@Getter
+@Setter
+@NoArgsConstructor
+public class LinkageEvent {
+
+    // Sequence, so outbox rows join Hibernate's insert batches (IDENTITY columns cannot). One value per row: each
+    // shard has its own sequence, and a pooled range fetched from one shard would also be handed out on the others
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "linkage_event_seq")
+    @SequenceGenerator(name = "linkage_event_seq", sequenceName = "linkage_event_seq", allocationSize = 1)
+    private Long id;
+
+    @Column(name = "event_type", nullable = false, length = 16)
+    private String eventType;
+
+    @Column(name = "old_key")
+    private String oldKey;
+
+    @Column(name = "new_key")
+    private String newKey;
+
+    @Column(name = "source", nullable = false, length = 16)
+    private String source;
+
+    @Column(name = "aadhaar_delta", nullable = false)
+    private int aadhaarDelta;
+
+    @Column(name = "pan_delta", nullable = false)
+    private int panDelta;
+
+    @Column(name = "voter_id_delta", nullable = false)
+    private int voterIdDelta;
+
+    @Column(name = "dl_delta", nullable = false)
+    private int dlDelta;
+
+    @Column(name = "old_key_deleted", nullable = false)
+    private boolean oldKeyDeleted;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getEventType() {
+		return eventType;
+	}
+
+	public void setEventType(String eventType) {
+		this.eventType = eventType;
+	}
+
+	public String getOldKey() {
+		return oldKey;
+	}
+
+	public void setOldKey(String oldKey) {
+		this.oldKey = oldKey;
+	}
+
+	public String getNewKey() {
+		return newKey;
+	}
+
+	public void setNewKey(String newKey) {
+		this.newKey = newKey;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public void setSource(String source) {
+		this.source = source;
+	}
+
+	public int getAadhaarDelta() {
+		return aadhaarDelta;
+	}
+
+	public void setAadhaarDelta(int aadhaarDelta) {
+		this.aadhaarDelta = aadhaarDelta;
+	}
+
+	public int getPanDelta() {
+		return panDelta;
+	}
+
+	public void setPanDelta(int panDelta) {
+		this.panDelta = panDelta;
+	}
+
+	public int getVoterIdDelta() {
+		return voterIdDelta;
+	}
+
+	public void setVoterIdDelta(int voterIdDelta) {
+		this.voterIdDelta = voterIdDelta;
+	}
+
+	public int getDlDelta() {
+		return dlDelta;
+	}
+
+	public void setDlDelta(int dlDelta) {
+		this.dlDelta = dlDelta;
+	}
+
+	public boolean isOldKeyDeleted() {
+		return oldKeyDeleted;
+	}
+
+	public void setOldKeyDeleted(boolean oldKeyDeleted) {
+		this.oldKeyDeleted = oldKeyDeleted;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+}
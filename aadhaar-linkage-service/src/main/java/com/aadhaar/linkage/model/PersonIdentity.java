@@ -1,70 +1,94 @@
 package com.aadhaar.linkage.model;
 
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.util.TimeOrderedKeyGenerator;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.annotations.UpdateTimestamp;
+import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 @Entity
-@Table(name = "person_identity")
+@Table(name = "person_identity", indexes = {
+        // Full Aadhaar match; the leading column also serves lookups by Aadhaar number alone
+        @Index(name = "idx_person_aadhaar_match", columnList = "hashed_aadhaar_number, hashed_dob, hashed_forename, hashed_lastname"),
+        @Index(name = "idx_person_pan", columnList = "hashed_pan_number"),
+        @Index(name = "idx_person_voter", columnList = "hashed_voter_id"),
+        @Index(name = "idx_person_dl", columnList = "hashed_dl_number"),
+        @Index(name = "idx_person_updated_at", columnList = "updated_at"),
+        @Index(name = "idx_person_source_mask", columnList = "source_mask")
+}, uniqueConstraints = {
+        // One live record per identity: concurrent INSERTs of the same person cannot both create a key
+        @UniqueConstraint(name = "uk_person_identity_match", columnNames = "identity_match_key")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class PersonIdentity {
+public class PersonIdentity implements Persistable<String> {
 
     @Id
     @Column(name = "aadhaar_linkage_key", nullable = false, updatable = false, unique = true)
     private String aadhaarLinkageKey;
 
-    // Hashed Personal Identifiers
-    @Column(name = "hashed_aadhaar_number", length = 64)
-    private String hashedAadhaarNumber;
+    // Hashed Personal Identifiers (raw SHA-256, fixed-width BINARY(32))
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_aadhaar_number", length = IdentityHash.LENGTH)
+    private IdentityHash hashedAadhaarNumber;
 
-    @Column(name = "hashed_pan_number", length = 64)
-    private String hashedPanNumber;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_pan_number", length = IdentityHash.LENGTH)
+    private IdentityHash hashedPanNumber;
 
-    @Column(name = "hashed_voter_id", length = 64)
-    private String hashedVoterId;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_voter_id", length = IdentityHash.LENGTH)
+    private IdentityHash hashedVoterId;
 
-    @Column(name = "hashed_dl_number", length = 64)
-    private String hashedDlNumber;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_dl_number", length = IdentityHash.LENGTH)
+    private IdentityHash hashedDlNumber;
 
     // Hashed Personal Info
-    @Column(name = "hashed_forename", length = 64)
-    private String hashedForename;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_forename", length = IdentityHash.LENGTH)
+    private IdentityHash hashedForename;
 
-    @Column(name = "hashed_secondname", length = 64)
-    private String hashedSecondname;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_secondname", length = IdentityHash.LENGTH)
+    private IdentityHash hashedSecondname;
 
-    @Column(name = "hashed_lastname", length = 64)
-    private String hashedLastname;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_lastname", length = IdentityHash.LENGTH)
+    private IdentityHash hashedLastname;
 
-    @Column(name = "hashed_dob", length = 64)
-    private String hashedDob;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_dob", length = IdentityHash.LENGTH)
+    private IdentityHash hashedDob;
 
-    @Column(name = "hashed_address", length = 128)
-    private String hashedAddress;
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "hashed_address", length = IdentityHash.LENGTH)
+    private IdentityHash hashedAddress;
+
+    // SHA-256 over (hashedForename, hashedDob); null on records superseded by an UPDATE of the same person
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "identity_match_key", length = IdentityHash.LENGTH)
+    private IdentityHash identityMatchKey;
 
     @Column(name = "gender", length = 10)
     private String gender;
 
-    // Counters
-    @Column(name = "aadhaar_counter")
-    private int aadhaarCounter;
-
-    @Column(name = "pan_counter")
-    private int panCounter;
-
-    @Column(name = "voter_id_counter")
-    private int voterIdCounter;
+    // Counters of every source in one vector (SourceCounters), and the bitmap of sources held
+    @Column(name = "source_counters", nullable = false)
+    private long sourceCounters;
 
-    @Column(name = "dl_counter")
-    private int dlCounter;
+    @Setter(AccessLevel.NONE)
+    @Column(name = "source_mask", nullable = false)
+    private int sourceMask;
 
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
@@ -74,13 +98,67 @@ public class PersonIdentity {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Optimistic lock: a concurrent change to the same record fails at commit instead of being lost
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    // Keys are assigned by the service, so Spring Data cannot tell new rows from existing ones by id.
+    // Tracking it here lets save() persist new rows directly instead of merging (SELECT + INSERT).
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean persisted;
+
     @PrePersist
     public void prePersist() {
         if (this.aadhaarLinkageKey == null) {
-            this.aadhaarLinkageKey = UUID.randomUUID().toString();
+            this.aadhaarLinkageKey = TimeOrderedKeyGenerator.shared().next();
         }
     }
 
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        this.persisted = true;
+    }
+
+	/**
+	 * Detached field-by-field copy, used to hand out cached records without sharing mutable state.
+	 */
+	public PersonIdentity copy() {
+		PersonIdentity c = new PersonIdentity();
+		c.aadhaarLinkageKey = aadhaarLinkageKey;
+		c.hashedAadhaarNumber = hashedAadhaarNumber;
+		c.hashedPanNumber = hashedPanNumber;
+		c.hashedVoterId = hashedVoterId;
+		c.hashedDlNumber = hashedDlNumber;
+		c.hashedForename = hashedForename;
+		c.hashedSecondname = hashedSecondname;
+		c.hashedLastname = hashedLastname;
+		c.hashedDob = hashedDob;
+		c.hashedAddress = hashedAddress;
+		c.identityMatchKey = identityMatchKey;
+		c.gender = gender;
+		c.sourceCounters = sourceCounters;
+		c.sourceMask = sourceMask;
+		c.createdAt = createdAt;
+		c.updatedAt = updatedAt;
+		c.version = version;
+		c.persisted = persisted;
+		return c;
+	}
+
+	@Override
+	public String getId() {
+		return aadhaarLinkageKey;
+	}
+
+	@Override
+	public boolean isNew() {
+		return !persisted;
+	}
+
 	public String getAadhaarLinkageKey() {
 		return aadhaarLinkageKey;
 	}
@@ -89,78 +167,86 @@ public class PersonIdentity {
 		this.aadhaarLinkageKey = aadhaarLinkageKey;
 	}
 
-	public String getHashedAadhaarNumber() {
+	public IdentityHash getHashedAadhaarNumber() {
 		return hashedAadhaarNumber;
 	}
 
-	public void setHashedAadhaarNumber(String hashedAadhaarNumber) {
+	public void setHashedAadhaarNumber(IdentityHash hashedAadhaarNumber) {
 		this.hashedAadhaarNumber = hashedAadhaarNumber;
 	}
 
-	public String getHashedPanNumber() {
+	public IdentityHash getHashedPanNumber() {
 		return hashedPanNumber;
 	}
 
-	public void setHashedPanNumber(String hashedPanNumber) {
+	public void setHashedPanNumber(IdentityHash hashedPanNumber) {
 		this.hashedPanNumber = hashedPanNumber;
 	}
 
-	public String getHashedVoterId() {
+	public IdentityHash getHashedVoterId() {
 		return hashedVoterId;
 	}
 
-	public void setHashedVoterId(String hashedVoterId) {
+	public void setHashedVoterId(IdentityHash hashedVoterId) {
 		this.hashedVoterId = hashedVoterId;
 	}
 
-	public String getHashedDlNumber() {
+	public IdentityHash getHashedDlNumber() {
 		return hashedDlNumber;
 	}
 
-	public void setHashedDlNumber(String hashedDlNumber) {
+	public void setHashedDlNumber(IdentityHash hashedDlNumber) {
 		this.hashedDlNumber = hashedDlNumber;
 	}
 
-	public String getHashedForename() {
+	public IdentityHash getHashedForename() {
 		return hashedForename;
 	}
 
-	public void setHashedForename(String hashedForename) {
+	public void setHashedForename(IdentityHash hashedForename) {
 		this.hashedForename = hashedForename;
 	}
 
-	public String getHashedSecondname() {
+	public IdentityHash getHashedSecondname() {
 		return hashedSecondname;
 	}
 
-	public void setHashedSecondname(String hashedSecondname) {
+	public void setHashedSecondname(IdentityHash hashedSecondname) {
 		this.hashedSecondname = hashedSecondname;
 	}
 
-	public String getHashedLastname() {
+	public IdentityHash getHashedLastname() {
 		return hashedLastname;
 	}
 
-	public void setHashedLastname(String hashedLastname) {
+	public void setHashedLastname(IdentityHash hashedLastname) {
 		this.hashedLastname = hashedLastname;
 	}
 
-	public String getHashedDob() {
+	public IdentityHash getHashedDob() {
 		return hashedDob;
 	}
 
-	public void setHashedDob(String hashedDob) {
+	public void setHashedDob(IdentityHash hashedDob) {
 		this.hashedDob = hashedDob;
 	}
 
-	public String getHashedAddress() {
+	public IdentityHash getHashedAddress() {
 		return hashedAddress;
 	}
 
-	public void setHashedAddress(String hashedAddress) {
+	public void setHashedAddress(IdentityHash hashedAddress) {
 		this.hashedAddress = hashedAddress;
 	}
 
+	public IdentityHash getIdentityMatchKey() {
+		return identityMatchKey;
+	}
+
+	public void setIdentityMatchKey(IdentityHash identityMatchKey) {
+		this.identityMatchKey = identityMatchKey;
+	}
+
 	public String getGender() {
 		return gender;
 	}
@@ -169,36 +255,49 @@ public class PersonIdentity {
 		this.gender = gender;
 	}
 
-	public int getAadhaarCounter() {
-		return aadhaarCounter;
+	public int getCounter(LinkageSource source) {
+		return SourceCounters.get(sourceCounters, source.ordinal());
 	}
 
-	public void setAadhaarCounter(int aadhaarCounter) {
-		this.aadhaarCounter = aadhaarCounter;
+	/**
+	 * Sets one source's counter, saturating at zero and {@link SourceCounters#MAX}.
+	 */
+	public void setCounter(LinkageSource source, int value) {
+		setSourceCounters(SourceCounters.set(sourceCounters, source.ordinal(), value));
 	}
 
-	public int getPanCounter() {
-		return panCounter;
+	public long getSourceCounters() {
+		return sourceCounters;
 	}
 
-	public void setPanCounter(int panCounter) {
-		this.panCounter = panCounter;
+	public void setSourceCounters(long sourceCounters) {
+		this.sourceCounters = sourceCounters;
+		this.sourceMask = SourceCounters.mask(sourceCounters);
 	}
 
-	public int getVoterIdCounter() {
-		return voterIdCounter;
+	/**
+	 * Bit {@code source.bit()} is set for each source whose counter is above zero.
+	 */
+	public int getSourceMask() {
+		return sourceMask;
 	}
 
-	public void setVoterIdCounter(int voterIdCounter) {
-		this.voterIdCounter = voterIdCounter;
+	public IdentityHash getHashedDocument(LinkageSource source) {
+		switch (source) {
+			case AADHAAR: return hashedAadhaarNumber;
+			case PAN: return hashedPanNumber;
+			case VOTER: return hashedVoterId;
+			default: return hashedDlNumber;
+		}
 	}
 
-	public int getDlCounter() {
-		return dlCounter;
-	}
-
-	public void setDlCounter(int dlCounter) {
-		this.dlCounter = dlCounter;
+	public void setHashedDocument(LinkageSource source, IdentityHash hash) {
+		switch (source) {
+			case AADHAAR: hashedAadhaarNumber = hash; break;
+			case PAN: hashedPanNumber = hash; break;
+			case VOTER: hashedVoterId = hash; break;
+			default: hashedDlNumber = hash; break;
+		}
 	}
 
 	public LocalDateTime getCreatedAt() {
@@ -216,5 +315,13 @@ public class PersonIdentity {
 	public void setUpdatedAt(LocalDateTime updatedAt) {
 		this.updatedAt = updatedAt;
 	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	public void setVersion(Long version) {
+		this.version = version;
+	}
     
 }
@@ -0,0 +1,64 @@
+package com.aadhaar.linkage.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-source counters packed into one {@code long} (person_identity.source_counters), with a bitmap of the
+ * sources whose counter is above zero alongside (source_mask).
+ * <p>
+ * Each source owns a 12-bit lane at {@code slot * 12}, so there is room for five sources with counts up to 4095.
+ * Updates are shifts and masks. Counts saturate: below zero is stored as zero and above 4095 as 4095, the same
+ * clamping the V6 migration applied to the old columns.
+ * <p>
+ * The presence bitmap has only {@code 2^sources} possible values, so a filter such as "holds PAN but no voter ID"
+ * becomes {@code source_mask IN (...)} over the values that match ({@link #masks}), which the source_mask index
+ * serves instead of a scan.
+ */
+public final class SourceCounters {
+
+    public static final int LANE_BITS = 12;
+    public static final int SLOTS = Long.SIZE / LANE_BITS;
+    public static final int MAX = (1 << LANE_BITS) - 1;
+
+    private SourceCounters() {}
+
+    public static int get(long counters, int slot) {
+        return (int) (counters >>> (slot * LANE_BITS)) & MAX;
+    }
+
+    public static long set(long counters, int slot, int value) {
+        int shift = slot * LANE_BITS;
+        return counters & ~((long) MAX << shift) | (long) Math.min(Math.max(value, 0), MAX) << shift;
+    }
+
+    /**
+     * Presence bitmap of a counter vector: bit {@code slot} is set when that counter is above zero.
+     */
+    public static int mask(long counters) {
+        int mask = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            mask |= (get(counters, slot) != 0 ? 1 : 0) << slot;
+        }
+        return mask;
+    }
+
+    /**
+     * Every presence bitmap over {@code slots} sources that has all bits of {@code required} and none of
+     * {@code excluded}.
+     */
+    public static List<Integer> masks(int slots, int required, int excluded) {
+        List<Integer> masks = new ArrayList<>();
+        for (int mask = 0; mask < 1 << slots; mask++) {
+            if ((mask & required) == required && (mask & excluded) == 0) masks.add(mask);
+        }
+        return masks;
+    }
+
+    /**
+     * Portable SQL for one counter of the source_counters column.
+     */
+    public static String sql(int slot) {
+        return "MOD(source_counters / " + (1L << (slot * LANE_BITS)) + ", " + (MAX + 1) + ")";
+    }
+}
@@ -0,0 +1,19 @@
+package com.aadhaar.linkage.repository;
+
+import com.aadhaar.linkage.model.LinkageEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LinkageEventRepository extends JpaRepository<LinkageEvent, Long> {
+
+    // Oldest pending outbox rows first, locked until the relay's transaction deletes them
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<LinkageEvent> findByOrderByIdAsc(Pageable page);
+
+}
@@ -1,5 +1,6 @@
 package com.aadhaar.linkage.repository;
 
+import com.aadhaar.linkage.model.IdentityHash;
 import com.aadhaar.linkage.model.PersonIdentity;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
@@ -10,11 +11,11 @@ import java.util.Optional;
 public interface LinkageRepository extends JpaRepository<PersonIdentity, String> {
 
     Optional<PersonIdentity> findByHashedAadhaarNumberAndHashedDobAndHashedForenameAndHashedLastname(
-            String hashedAadhaarNumber,
-            String hashedDob,
-            String hashedForename,
-            String hashedLastname
+            IdentityHash hashedAadhaarNumber,
+            IdentityHash hashedDob,
+            IdentityHash hashedForename,
+            IdentityHash hashedLastname
     );
-    Optional<PersonIdentity> findByHashedForenameAndHashedDob(String hashedForename, String hashedDob);
+    Optional<PersonIdentity> findByIdentityMatchKey(IdentityHash identityMatchKey);
 
 }
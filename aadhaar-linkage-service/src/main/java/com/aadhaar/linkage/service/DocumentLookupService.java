@@ -0,0 +1,405 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.model.PersonIdentity;
+import com.aadhaar.linkage.model.SourceCounters;
+import com.aadhaar.linkage.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Finds people by any of their documents (Aadhaar, PAN, voter ID, driving licence) without going through INSERT.
+ * <p>
+ * Document numbers are hashed like everywhere else and looked up through the per-document indexes; a batch issues
+ * one IN query per document type (per shard, in parallel), not one query per value. Only records that still hold
+ * the document count, i.e. whose source_mask has that source's bit set.
+ * <p>
+ * With linkage.lookup.bloom.enabled, a Bloom filter per document type answers most misses without touching the
+ * database. The filters are built from the table after startup and every linkage.lookup.bloom.rebuild-interval
+ * (which also drops documents that were deleted since), and new documents are added as they are written. Until the
+ * first build completes every lookup goes to the database.
+ * <p>
+ * Documents written by other nodes never pass through this one, so a filter miss is only final once the filters
+ * have caught up: a lookup with misses first checks the newest updated_at (one query per shard on its index) and,
+ * if anything was written since the filters last looked, adds the documents of the records updated since then
+ * (less linkage.lookup.bloom.catch-up-margin, for transactions that committed late).
+ */
+@Service
+public class DocumentLookupService {
+
+    private static final Logger log = LoggerFactory.getLogger(DocumentLookupService.class);
+
+    // Values per IN list
+    private static final int CHUNK = 500;
+
+    public enum Document {
+        AADHAAR("aadhaar_number", "hashed_aadhaar_number", LinkageSource.AADHAAR),
+        PAN("pan_number", "hashed_pan_number", LinkageSource.PAN),
+        VOTER("voter_id", "hashed_voter_id", LinkageSource.VOTER),
+        DRIVING("dl_number", "hashed_dl_number", LinkageSource.DRIVING);
+
+        private final String field;
+        private final String column;
+        private final LinkageSource source;
+        // Presence bitmaps of the records that hold this document
+        private final String holding;
+
+        Document(String field, String column, LinkageSource source) {
+            this.field = field;
+            this.column = column;
+            this.source = source;
+            this.holding = "source_mask IN (" + SourceCounters.masks(LinkageSource.values().length, source.bit(), 0)
+                    .stream().map(String::valueOf).collect(Collectors.joining(", ")) + ")";
+        }
+
+        static Optional<Document> forField(String field) {
+            for (Document d : values()) {
+                if (d.field.equals(field)) return Optional.of(d);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final IdentityHasher hasher;
+    private final boolean bloomEnabled;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final Duration rebuildInterval;
+    private final Duration catchUpMargin;
+    private final Counter filtered;
+    private final Counter found;
+    private final Counter notFound;
+    private final ScheduledExecutorService rebuilder;
+
+    // Indexed by Document.ordinal(); null until the first build
+    private volatile BloomFilter[] filters;
+    // Filters of a rebuild in progress, which also receive every document committed meanwhile
+    private volatile BloomFilter[] building;
+    // Newest updated_at whose documents are in the filters
+    private volatile Timestamp caughtUp;
+    private final Object catchUpLock = new Object();
+
+    public DocumentLookupService(DataSource dataSource, ShardRouter shards, IdentityHasher hasher,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${linkage.lookup.bloom.enabled:false}") boolean bloomEnabled,
+                                 @Value("${linkage.lookup.bloom.expected-insertions:1000000}") long expectedInsertions,
+                                 @Value("${linkage.lookup.bloom.false-positive-rate:0.01}") double falsePositiveRate,
+                                 @Value("${linkage.lookup.bloom.rebuild-interval:6h}") Duration rebuildInterval,
+                                 @Value("${linkage.lookup.bloom.catch-up-margin:1m}") Duration catchUpMargin) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.jdbc.setFetchSize(1000);
+        this.shards = shards;
+        this.hasher = hasher;
+        this.bloomEnabled = bloomEnabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildInterval = rebuildInterval;
+        this.catchUpMargin = catchUpMargin;
+        // linkage.lookup.documents{result=filtered|found|not_found}; not_found while the filters are up = false positive
+        this.filtered = lookups(meterRegistry, "filtered");
+        this.found = lookups(meterRegistry, "found");
+        this.notFound = lookups(meterRegistry, "not_found");
+        this.rebuilder = !bloomEnabled ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "document-filter-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ---------------- LOOKUP ----------------
+    /**
+     * Linkage keys per supplied document field, e.g. {"pan_number": ["key"], "voter_id": []}.
+     */
+    public LinkageResponse lookup(Map<String, String> documents) {
+        String invalid = validate(documents);
+        if (invalid != null) return LinkageResponse.error(invalid);
+
+        Map<String, List<String>> result = resolve(List.of(documents)).get(0);
+        long matched = result.values().stream().filter(keys -> !keys.isEmpty()).count();
+        return LinkageResponse.success(matched == 0 ? "No record holds these documents"
+                : "Found records for " + matched + " of " + result.size() + " documents", result);
+    }
+
+    /**
+     * {@link #lookup} for many document sets at once; results are returned in request order.
+     */
+    public LinkageResponse lookupBatch(List<Map<String, String>> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            String invalid = validate(batch.get(i));
+            if (invalid != null) return LinkageResponse.error("Lookup " + i + ": " + invalid);
+        }
+        return LinkageResponse.success("Looked up " + batch.size() + " document sets", resolve(batch));
+    }
+
+    /**
+     * Number of records that hold every source in {@code with} and none in {@code without}, e.g. PAN but no
+     * voter ID. Served by the source_mask index: the condition becomes the list of bitmaps that satisfy it.
+     */
+    public LinkageResponse coverage(List<String> with, List<String> without) {
+        int required = 0;
+        int excluded = 0;
+        for (String name : with) {
+            LinkageSource source = LinkageSource.parse(name);
+            if (source == null) return LinkageResponse.error("Not a source: " + name);
+            required |= source.bit();
+        }
+        for (String name : without) {
+            LinkageSource source = LinkageSource.parse(name);
+            if (source == null) return LinkageResponse.error("Not a source: " + name);
+            excluded |= source.bit();
+        }
+        if ((required & excluded) != 0)
+            return LinkageResponse.error("A source cannot be both required and excluded");
+
+        List<Integer> masks = SourceCounters.masks(LinkageSource.values().length, required, excluded);
+        // Every record holds at least one source; one with none left is deleted
+        masks.remove(Integer.valueOf(0));
+        long records = 0;
+        if (!masks.isEmpty()) {
+            String sql = "SELECT COUNT(*) FROM person_identity WHERE source_mask IN ("
+                    + String.join(", ", Collections.nCopies(masks.size(), "?")) + ")";
+            for (long count : shards.onAllShards(shard -> jdbc.queryForObject(sql, Long.class, masks.toArray()))) {
+                records += count;
+            }
+        }
+        return LinkageResponse.success("Records by source coverage", Map.of("records", records));
+    }
+
+    // ---------------- FILTERS ----------------
+    /**
+     * Adds the documents a saved person holds to the filters. Call after every write that can add a document.
+     */
+    public void remember(PersonIdentity person) {
+        if (!bloomEnabled) return;
+        List<byte[]> digests = new ArrayList<>(Document.values().length);
+        BloomFilter[] current = filters;
+        for (Document d : Document.values()) {
+            IdentityHash hash = person.getCounter(d.source) > 0 ? person.getHashedDocument(d.source) : null;
+            byte[] digest = hash == null ? null : hash.toBytes();
+            digests.add(digest);
+            // Right away, so a lookup never misses a document this node has just written
+            if (digest != null && current != null) current[d.ordinal()].put(digest);
+        }
+        // Once committed, so that a rebuild that started before this write cannot lose it
+        afterCommit(() -> {
+            BloomFilter[] next = building;
+            if (next == null) return;
+            for (Document d : Document.values()) {
+                byte[] digest = digests.get(d.ordinal());
+                if (digest != null) next[d.ordinal()].put(digest);
+            }
+        });
+    }
+
+    /**
+     * Rebuilds the filters from the table and swaps them in.
+     */
+    public synchronized void rebuild() {
+        long rows = 0;
+        for (long count : shards.onAllShards(shard ->
+                jdbc.queryForObject("SELECT COUNT(*) FROM person_identity", Long.class))) {
+            rows += count;
+        }
+        long size = Math.max(expectedInsertions, 2 * rows);
+        BloomFilter[] next = new BloomFilter[Document.values().length];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = new BloomFilter(size, falsePositiveRate);
+        }
+        building = next;
+        try {
+            Timestamp newest = scan(next, "", new Object[0]);
+            filters = next;
+            caughtUp = newest;
+        } finally {
+            building = null;
+        }
+        log.info("Document filters rebuilt from {} records ({} bits each)", rows, next[0].bitCount());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRebuilds() {
+        if (rebuilder == null) return;
+        long periodMillis = Math.max(1, rebuildInterval.toMillis());
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rebuilder != null) rebuilder.shutdownNow();
+    }
+
+    // ---------------- HELPERS ----------------
+    // Adds the documents of the matching records to the filters; returns their newest updated_at
+    private Timestamp scan(BloomFilter[] into, String where, Object[] args) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (Document d : Document.values()) {
+            sql.append(d.column).append(", ");
+        }
+        sql.append("source_mask, updated_at FROM person_identity").append(where);
+        int maskColumn = Document.values().length + 1;
+        Timestamp newest = null;
+        for (Timestamp t : shards.onAllShards(shard -> {
+            Timestamp[] max = new Timestamp[1];
+            jdbc.query(sql.toString(), rs -> {
+                int mask = rs.getInt(maskColumn);
+                for (Document d : Document.values()) {
+                    byte[] digest = rs.getBytes(d.ordinal() + 1);
+                    if (digest != null && (mask & d.source.bit()) != 0) into[d.ordinal()].put(digest);
+                }
+                max[0] = later(max[0], rs.getTimestamp(maskColumn + 1));
+            }, args);
+            return max[0];
+        })) {
+            newest = later(newest, t);
+        }
+        return newest;
+    }
+
+    // Before a miss is trusted: documents written since the filters last looked, here or on other nodes
+    private void catchUp(BloomFilter[] current) {
+        synchronized (catchUpLock) {
+            Timestamp since = caughtUp;
+            Timestamp newest = null;
+            for (Timestamp t : shards.onAllShards(shard ->
+                    jdbc.queryForObject("SELECT MAX(updated_at) FROM person_identity", Timestamp.class))) {
+                newest = later(newest, t);
+            }
+            if (newest == null || (since != null && !newest.after(since))) return;
+            Timestamp from = since == null ? null : new Timestamp(since.getTime() - catchUpMargin.toMillis());
+            Timestamp seen = from == null ? scan(current, "", new Object[0])
+                    : scan(current, " WHERE updated_at >= ?", new Object[]{from});
+            // Unless a rebuild swapped in other filters meanwhile; it set its own watermark
+            if (filters == current) caughtUp = later(since, seen);
+        }
+    }
+
+    private static Timestamp later(Timestamp a, Timestamp b) {
+        if (a == null) return b;
+        return b == null || !b.after(a) ? a : b;
+    }
+
+    private static String validate(Map<String, String> documents) {
+        if (documents == null || documents.isEmpty())
+            return "At least one document number is required for lookup";
+        for (String field : documents.keySet()) {
+            if (Document.forField(field).isEmpty())
+                return "Not a document field: " + field + " (expected aadhaar_number, pan_number, voter_id or dl_number)";
+        }
+        return null;
+    }
+
+    private List<Map<String, List<String>>> resolve(List<Map<String, String>> batch) {
+        List<HashedIdentity> hashed = batch.stream().map(hasher::hash).toList();
+
+        // Distinct hashes per document type that the filters could not rule out
+        Map<Document, Set<IdentityHash>> pending = new EnumMap<>(Document.class);
+        BloomFilter[] current = filters;
+        boolean caughtUpNow = false;
+        for (int i = 0; i < batch.size(); i++) {
+            for (String field : batch.get(i).keySet()) {
+                Document d = Document.forField(field).orElseThrow();
+                IdentityHash hash = hashed.get(i).document(d.source);
+                if (hash == null) continue;
+                if (current != null && !current[d.ordinal()].mightContain(hash.toBytes())) {
+                    if (!caughtUpNow) {
+                        catchUp(current);
+                        caughtUpNow = true;
+                    }
+                    if (!current[d.ordinal()].mightContain(hash.toBytes())) {
+                        filtered.increment();
+                        continue;
+                    }
+                }
+                pending.computeIfAbsent(d, x -> new HashSet<>()).add(hash);
+            }
+        }
+        Map<Document, Map<IdentityHash, List<String>>> holders = new EnumMap<>(Document.class);
+        pending.forEach((d, hashes) -> holders.put(d, holders(d, hashes)));
+
+        List<Map<String, List<String>>> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<String, List<String>> result = new LinkedHashMap<>();
+            for (String field : batch.get(i).keySet()) {
+                Document d = Document.forField(field).orElseThrow();
+                IdentityHash hash = hashed.get(i).document(d.source);
+                List<String> keys = hash == null ? null : holders.getOrDefault(d, Map.of()).get(hash);
+                result.put(field, keys == null ? List.of() : keys);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private Map<IdentityHash, List<String>> holders(Document d, Set<IdentityHash> hashes) {
+        List<IdentityHash> values = new ArrayList<>(hashes);
+        Map<IdentityHash, List<String>> byHash = new HashMap<>();
+        for (IdentityHash hash : values) {
+            byHash.put(hash, new ArrayList<>(1));
+        }
+        for (int from = 0; from < values.size(); from += CHUNK) {
+            List<IdentityHash> chunk = values.subList(from, Math.min(values.size(), from + CHUNK));
+            String sql = "SELECT " + d.column + ", aadhaar_linkage_key FROM person_identity WHERE " + d.column
+                    + " IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") AND " + d.holding;
+            Object[] args = chunk.stream().map(IdentityHash::toBytes).toArray();
+            for (List<Object[]> rows : shards.onAllShards(shard ->
+                    jdbc.query(sql, (rs, n) -> new Object[]{rs.getBytes(1), rs.getString(2)}, args))) {
+                for (Object[] row : rows) {
+                    byHash.get(IdentityHash.wrap((byte[]) row[0])).add((String) row[1]);
+                }
+            }
+        }
+        byHash.values().forEach(keys -> (keys.isEmpty() ? notFound : found).increment());
+        return byHash;
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Document filter rebuild failed, lookups keep using the previous filters: {}", e.getClass().getName());
+        }
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("linkage.lookup.documents")
+                .description("Document lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.IdentityHash;
+
+/**
+ * SHA-256 hashes of the PII fields of one request. A field is {@code null} when it was not supplied.
+ */
+public final class HashedIdentity {
+
+    private final IdentityHash aadhaarNumber;
+    private final IdentityHash panNumber;
+    private final IdentityHash voterId;
+    private final IdentityHash dlNumber;
+    private final IdentityHash forename;
+    private final IdentityHash secondname;
+    private final IdentityHash lastname;
+    private final IdentityHash dob;
+    private final IdentityHash address;
+    private final IdentityHash matchKey;
+
+    HashedIdentity(IdentityHash[] hashes) {
+        this.aadhaarNumber = hashes[0];
+        this.panNumber = hashes[1];
+        this.voterId = hashes[2];
+        this.dlNumber = hashes[3];
+        this.forename = hashes[4];
+        this.secondname = hashes[5];
+        this.lastname = hashes[6];
+        this.dob = hashes[7];
+        this.address = hashes[8];
+        this.matchKey = IdentityHash.combine(forename, dob);
+    }
+
+    public IdentityHash getAadhaarNumber() { return aadhaarNumber; }
+    public IdentityHash getPanNumber() { return panNumber; }
+    public IdentityHash getVoterId() { return voterId; }
+    public IdentityHash getDlNumber() { return dlNumber; }
+    public IdentityHash getForename() { return forename; }
+    public IdentityHash getSecondname() { return secondname; }
+    public IdentityHash getLastname() { return lastname; }
+    public IdentityHash getDob() { return dob; }
+    public IdentityHash getAddress() { return address; }
+
+    /**
+     * Hash of the document number the given source supplies.
+     */
+    public IdentityHash document(LinkageSource source) {
+        switch (source) {
+            case AADHAAR: return aadhaarNumber;
+            case PAN: return panNumber;
+            case VOTER: return voterId;
+            default: return dlNumber;
+        }
+    }
+
+    /**
+     * Identity-match key over (forename, dob), or {@code null} if either is missing.
+     */
+    public IdentityHash getMatchKey() { return matchKey; }
+}
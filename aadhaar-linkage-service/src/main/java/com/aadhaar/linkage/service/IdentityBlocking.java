@@ -0,0 +1,201 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.*;
+
+/**
+ * Candidate generation for fuzzy identity matching, so that "Ramesh" / "Ramseh" / "Ramesh Kumar" born on the same
+ * day are recognised as probably the same person without comparing against every record.
+ * <p>
+ * Before the forename is hashed, each of its parts yields a Soundex code and its character bigrams. Each one is
+ * combined with the DOB and stored as an HMAC-SHA256 token (linkage.fuzzy.token-key) in identity_block_token:
+ * keyed, because plain hashes of such short values could be reversed by brute force.
+ * <p>
+ * A lookup reads the records sharing a phonetic token (one block, at most linkage.fuzzy.max-block-size records),
+ * then scores each by the Dice overlap of all its tokens with the query's. Records with a match key have tokens;
+ * DOB typos are out of scope, since the DOB is part of every block.
+ * <p>
+ * Not combined with sharded storage: the index lives next to the records, so a lookup would only see the
+ * current shard's block, and auto-linking to a record on another shard would mean routing the INSERT there.
+ * Does nothing unless linkage.fuzzy.enabled=true.
+ */
+@Component
+public class IdentityBlocking {
+
+    public record Candidate(String linkageKey, double score) {}
+
+    /**
+     * Tokens of one identity; the phonetic ones select the block.
+     */
+    public record Tokens(List<IdentityHash> phonetic, Set<IdentityHash> all) {}
+
+    // Soundex digit for a..z
+    private static final String SOUNDEX = "01230120022455012623010202";
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final ThreadLocal<Mac> mac;
+    private final double candidateThreshold;
+    private final double autoLinkThreshold;
+    private final int maxBlockSize;
+    private final int maxCandidates;
+    private final Timer lookups;
+
+    public IdentityBlocking(DataSource dataSource, MeterRegistry meterRegistry, ShardRouter shards,
+                            @Value("${linkage.fuzzy.enabled:false}") boolean enabled,
+                            @Value("${linkage.fuzzy.token-key:}") String tokenKey,
+                            @Value("${linkage.fuzzy.candidate-threshold:0.6}") double candidateThreshold,
+                            @Value("${linkage.fuzzy.auto-link-threshold:1.0}") double autoLinkThreshold,
+                            @Value("${linkage.fuzzy.max-block-size:200}") int maxBlockSize,
+                            @Value("${linkage.fuzzy.max-candidates:5}") int maxCandidates) {
+        if (enabled && tokenKey.isBlank())
+            throw new IllegalStateException("linkage.fuzzy.token-key (FUZZY_TOKEN_KEY) must be set when fuzzy matching is enabled");
+        if (enabled && shards.isSharded())
+            throw new IllegalStateException("linkage.fuzzy.enabled cannot be combined with linkage.shards.enabled");
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.enabled = enabled;
+        byte[] key = tokenKey.getBytes(StandardCharsets.UTF_8);
+        this.mac = ThreadLocal.withInitial(() -> newMac(key));
+        this.candidateThreshold = candidateThreshold;
+        this.autoLinkThreshold = autoLinkThreshold;
+        this.maxBlockSize = Math.max(1, maxBlockSize);
+        this.maxCandidates = Math.max(1, maxCandidates);
+        this.lookups = Timer.builder("linkage.fuzzy.candidates")
+                .description("Blocking-index lookups for near-duplicate identities")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------- TOKENS ----------------
+    /**
+     * Tokens for a raw (unhashed) forename and DOB, or {@code null} when disabled or either is missing.
+     */
+    public Tokens tokens(String forename, String dob) {
+        if (!enabled || forename == null || dob == null || dob.isBlank()) return null;
+        String day = dob.trim().toLowerCase(Locale.ROOT);
+        List<IdentityHash> phonetic = new ArrayList<>();
+        Set<IdentityHash> all = new HashSet<>();
+        for (String part : forename.toLowerCase(Locale.ROOT).split("[^\\p{L}]+")) {
+            if (part.isEmpty()) continue;
+            IdentityHash code = token('P', phonetic(part), day);
+            if (all.add(code)) phonetic.add(code);
+            int[] cps = ("^" + part + "$").codePoints().toArray();
+            for (int i = 0; i + 1 < cps.length; i++) {
+                all.add(token('G', new String(cps, i, 2), day));
+            }
+        }
+        return phonetic.isEmpty() ? null : new Tokens(phonetic, all);
+    }
+
+    // ---------------- LOOKUP ----------------
+    /**
+     * Records scoring at least linkage.fuzzy.candidate-threshold, best first, at most linkage.fuzzy.max-candidates.
+     */
+    public List<Candidate> candidates(Tokens tokens) {
+        if (tokens == null) return List.of();
+        return lookups.record(() -> {
+            List<String> block = jdbc.queryForList("SELECT DISTINCT linkage_key FROM identity_block_token WHERE token IN ("
+                            + placeholders(tokens.phonetic().size()) + ") LIMIT " + maxBlockSize,
+                    String.class, tokens.phonetic().stream().map(IdentityHash::toBytes).toArray());
+            if (block.isEmpty()) return List.of();
+
+            Map<String, int[]> counts = new HashMap<>(); // {shared, total}
+            jdbc.query("SELECT linkage_key, token FROM identity_block_token WHERE linkage_key IN ("
+                    + placeholders(block.size()) + ")", rs -> {
+                int[] c = counts.computeIfAbsent(rs.getString(1), k -> new int[2]);
+                c[1]++;
+                if (tokens.all().contains(IdentityHash.wrap(rs.getBytes(2)))) c[0]++;
+            }, block.toArray());
+
+            List<Candidate> scored = new ArrayList<>();
+            counts.forEach((key, c) -> {
+                double dice = 2.0 * c[0] / (tokens.all().size() + c[1]);
+                if (dice >= candidateThreshold) scored.add(new Candidate(key, dice));
+            });
+            scored.sort(Comparator.comparingDouble(Candidate::score).reversed());
+            return scored.size() > maxCandidates ? List.copyOf(scored.subList(0, maxCandidates)) : scored;
+        });
+    }
+
+    /**
+     * Whether the candidate is close enough to be treated as the same person (linkage.fuzzy.auto-link-threshold).
+     */
+    public boolean autoLinks(Candidate candidate) {
+        return candidate.score() >= autoLinkThreshold;
+    }
+
+    // ---------------- INDEX ----------------
+    public void index(String linkageKey, Tokens tokens) {
+        if (!enabled || tokens == null) return;
+        jdbc.batchUpdate("INSERT INTO identity_block_token (token, linkage_key) VALUES (?, ?)",
+                tokens.all().stream().map(t -> new Object[]{t.toBytes(), linkageKey}).toList());
+    }
+
+    public void remove(String linkageKey) {
+        if (!enabled) return;
+        jdbc.update("DELETE FROM identity_block_token WHERE linkage_key = ?", linkageKey);
+    }
+
+    // ---------------- HELPERS ----------------
+    private IdentityHash token(char kind, String value, String dob) {
+        Mac m = mac.get();
+        m.update((byte) kind);
+        m.update(value.getBytes(StandardCharsets.UTF_8));
+        m.update((byte) 0);
+        return IdentityHash.wrap(m.doFinal(dob.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Soundex for Latin names; other scripts block on their first three letters
+    static String phonetic(String part) {
+        char first = part.charAt(0);
+        if (first < 'a' || first > 'z') {
+            return part.codePoints().limit(3)
+                    .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append).toString();
+        }
+        StringBuilder out = new StringBuilder(4).append((char) (first - 32));
+        char last = SOUNDEX.charAt(first - 'a');
+        for (int i = 1; i < part.length() && out.length() < 4; i++) {
+            char c = part.charAt(i);
+            if (c < 'a' || c > 'z') continue;
+            char code = SOUNDEX.charAt(c - 'a');
+            if (code == '0') {
+                // Vowels separate equal codes, h and w do not
+                if (c != 'h' && c != 'w') last = '0';
+                continue;
+            }
+            if (code != last) out.append(code);
+            last = code;
+        }
+        while (out.length() < 4) out.append('0');
+        return out.toString();
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static Mac newMac(byte[] key) {
+        try {
+            Mac m = Mac.getInstance("HmacSHA256");
+            // An empty key only occurs while disabled, where no token is ever computed
+            m.init(new SecretKeySpec(key.length == 0 ? new byte[1] : key, "HmacSHA256"));
+            return m;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available: " + e.getMessage(), e);
+        }
+    }
+}
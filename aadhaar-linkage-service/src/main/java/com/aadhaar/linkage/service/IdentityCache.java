@@ -0,0 +1,166 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.model.PersonIdentity;
+import com.aadhaar.linkage.repository.LinkageRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded read-through / write-through cache in front of {@link LinkageRepository}.
+ * <p>
+ * Records are cached by linkage key, and the identity-match key is cached as a pointer to the linkage key.
+ * Cached records are detached copies; callers always get their own copy.
+ * Cache writes made inside a transaction are applied only after it commits, so a rolled back
+ * transaction never leaves its state behind.
+ */
+@Component
+public class IdentityCache {
+
+    private final LinkageRepository repo;
+    private final boolean enabled;
+    private final Cache<String, PersonIdentity> byKey;
+    private final Cache<IdentityHash, String> byMatch;
+
+    public IdentityCache(LinkageRepository repo, MeterRegistry meterRegistry,
+                         @Value("${linkage.cache.enabled:true}") boolean enabled,
+                         @Value("${linkage.cache.maximum-size:100000}") long maximumSize,
+                         @Value("${linkage.cache.ttl:10m}") Duration ttl) {
+        this.repo = repo;
+        this.enabled = enabled;
+        this.byKey = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.byMatch = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // cache.size / cache.gets{result=hit|miss} / cache.evictions, tagged cache=identity.byKey|identity.byMatch
+        CaffeineCacheMetrics.monitor(meterRegistry, byKey, "identity.byKey");
+        CaffeineCacheMetrics.monitor(meterRegistry, byMatch, "identity.byMatch");
+    }
+
+    // ---------------- READS ----------------
+    public Optional<PersonIdentity> findByKey(String key) {
+        if (!enabled) return repo.findById(key);
+
+        PersonIdentity cached = byKey.getIfPresent(key);
+        if (cached != null) return Optional.of(cached.copy());
+
+        Optional<PersonIdentity> loaded = repo.findById(key);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    /**
+     * Like {@link #findByKey}, but a row loaded on a miss is not cached: for reads from a replica, whose copy may
+     * be older than what this node just wrote.
+     */
+    public Optional<PersonIdentity> findByKeyUncached(String key) {
+        PersonIdentity cached = enabled ? byKey.getIfPresent(key) : null;
+        return cached != null ? Optional.of(cached.copy()) : repo.findById(key);
+    }
+
+    public Optional<PersonIdentity> findByMatch(IdentityHash matchKey) {
+        if (!enabled) return repo.findByIdentityMatchKey(matchKey);
+
+        String key = byMatch.getIfPresent(matchKey);
+        if (key != null) {
+            PersonIdentity cached = byKey.getIfPresent(key);
+            if (cached != null && matchKey.equals(cached.getIdentityMatchKey())) {
+                return Optional.of(cached.copy());
+            }
+        }
+
+        Optional<PersonIdentity> loaded = repo.findByIdentityMatchKey(matchKey);
+        loaded.ifPresent(this::put);
+        return loaded;
+    }
+
+    // ---------------- WRITES ----------------
+    /**
+     * Records the state of a saved (or freshly loaded) person.
+     */
+    public void put(PersonIdentity person) {
+        if (!enabled) return;
+        afterCommit(() -> {
+            PersonIdentity snapshot = person.copy();
+            byKey.put(snapshot.getAadhaarLinkageKey(), snapshot);
+            if (snapshot.getIdentityMatchKey() != null) {
+                byMatch.put(snapshot.getIdentityMatchKey(), snapshot.getAadhaarLinkageKey());
+            }
+        });
+    }
+
+    /**
+     * Forgets a deleted person. The match pointer is only dropped if it still points at this person.
+     */
+    public void evict(PersonIdentity person) {
+        if (!enabled) return;
+        String key = person.getAadhaarLinkageKey();
+        IdentityHash matchKey = person.getIdentityMatchKey();
+        afterCommit(() -> {
+            byKey.invalidate(key);
+            if (matchKey != null) {
+                byMatch.asMap().remove(matchKey, key);
+            }
+        });
+    }
+
+    /**
+     * Drops a record immediately, e.g. after an optimistic-lock conflict showed the cached copy is stale.
+     */
+    public void evictKey(String key) {
+        if (!enabled || key == null) return;
+        byKey.invalidate(key);
+    }
+
+    // ---------------- METRICS ----------------
+    public Map<String, Object> stats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("enabled", enabled);
+        map.put("byKey", describe(byKey));
+        map.put("byMatch", describe(byMatch));
+        return map;
+    }
+
+    // ---------------- HELPERS ----------------
+    private static Map<String, Object> describe(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", cache.estimatedSize());
+        map.put("hitRate", stats.hitRate());
+        map.put("hits", stats.hitCount());
+        map.put("misses", stats.missCount());
+        map.put("evictions", stats.evictionCount());
+        return map;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.PersonData;
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.util.HashUtil;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Hashes every PII field of a request up front, so each handler works from one {@link HashedIdentity}
+ * instead of hashing fields on demand (and sometimes twice).
+ * Values are trimmed and lower-cased before hashing; gender is stored as-is and not hashed.
+ */
+@Component
+public class IdentityHasher {
+
+    // Order matches the HashedIdentity constructor
+    static final String[] FIELDS = {
+            "aadhaar_number", "pan_number", "voter_id", "dl_number",
+            "forename", "secondname", "lastname", "dob", "address"
+    };
+
+    public HashedIdentity hash(PersonData data) {
+        IdentityHash[] hashes = new IdentityHash[FIELDS.length];
+        if (data != null) {
+            hashes[0] = hash(data.getAadhaarNumber());
+            hashes[1] = hash(data.getPanNumber());
+            hashes[2] = hash(data.getVoterId());
+            hashes[3] = hash(data.getDlNumber());
+            hashes[4] = hash(data.getForename());
+            hashes[5] = hash(data.getSecondname());
+            hashes[6] = hash(data.getLastname());
+            hashes[7] = hash(data.getDob());
+            hashes[8] = hash(data.getAddress());
+        }
+        return new HashedIdentity(hashes);
+    }
+
+    /**
+     * Same for the map form ("aadhaar_number", "forename", ...).
+     */
+    public HashedIdentity hash(Map<String, String> data) {
+        IdentityHash[] hashes = new IdentityHash[FIELDS.length];
+        if (data != null) {
+            for (int i = 0; i < FIELDS.length; i++) {
+                hashes[i] = hash(data.get(FIELDS[i]));
+            }
+        }
+        return new HashedIdentity(hashes);
+    }
+
+    private static IdentityHash hash(String value) {
+        return IdentityHash.wrap(HashUtil.sha256Bytes(value));
+    }
+}
@@ -0,0 +1,37 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks keyed by identity-match hash. Requests for the same person serialize on one stripe,
+ * while different people almost always land on different stripes and run in parallel.
+ * <p>
+ * This only covers one JVM; across nodes the unique constraint on identity_match_key is the backstop.
+ */
+@Component
+public class IdentityLocks {
+
+    private final Lock[] stripes;
+    private final int mask;
+
+    public IdentityLocks(@Value("${linkage.locks.stripes:1024}") int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Stripe for the given identity, or {@code null} when there is no identity to lock on.
+     */
+    public Lock forIdentity(IdentityHash matchKey) {
+        return matchKey == null ? null : stripes[matchKey.hashCode() & mask];
+    }
+}
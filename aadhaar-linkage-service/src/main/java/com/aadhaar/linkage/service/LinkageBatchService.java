@@ -0,0 +1,206 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Runs many linkage requests through {@link LinkageService} in chunked transactions.
+ * Each chunk commits once (once per shard it touches, with sharded storage), so Hibernate can group its
+ * writes into JDBC batches.
+ */
+@Service
+public class LinkageBatchService {
+
+    private final LinkageService linkageService;
+    private final ShardRouter shards;
+    private final TransactionTemplate txTemplate;
+    private final Validator validator;
+    private final int chunkSize;
+
+    public LinkageBatchService(LinkageService linkageService,
+                               ShardRouter shards,
+                               PlatformTransactionManager txManager,
+                               Validator validator,
+                               @Value("${linkage.batch.chunk-size:500}") int chunkSize) {
+        this.linkageService = linkageService;
+        this.shards = shards;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.validator = validator;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // ---------------- IN-MEMORY BATCH ----------------
+    public List<LinkageResponse> processBatch(List<LinkageRequest> requests) {
+        List<LinkageResponse> results = new ArrayList<>(requests.size());
+        processStream(requests.iterator(), results::add);
+        return results;
+    }
+
+    // ---------------- STREAMING BATCH ----------------
+    /**
+     * Pulls requests from the iterator one chunk at a time and hands each result to the sink in input order.
+     * Only one chunk is held in memory, so the input can be arbitrarily long.
+     *
+     * @return number of requests processed
+     */
+    public long processStream(Iterator<LinkageRequest> requests, Consumer<LinkageResponse> sink) {
+        List<LinkageRequest> chunk = new ArrayList<>(chunkSize);
+        long count = 0;
+        while (requests.hasNext()) {
+            chunk.add(requests.next());
+            if (chunk.size() == chunkSize) {
+                processChunk(chunk, sink);
+                count += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, sink);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    // ---------------- NDJSON BATCH ----------------
+    /**
+     * {@link #processStream} over NDJSON, one request per line (blank lines are skipped). A line that is not a
+     * request gets an ERROR result in its place, and the lines around it are processed as usual, so every line
+     * has exactly one result. The error does not quote the line, which may hold identity data.
+     *
+     * @return number of results written
+     */
+    public long processLines(BufferedReader lines, ObjectReader reader, Consumer<LinkageResponse> sink)
+            throws IOException {
+        List<LinkageRequest> chunk = new ArrayList<>(chunkSize);
+        Map<Integer, LinkageResponse> unreadable = new HashMap<>();
+        long count = 0;
+        long lineNumber = 0;
+        for (String line; (line = lines.readLine()) != null; ) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            try {
+                chunk.add(reader.readValue(line));
+            } catch (JsonProcessingException e) {
+                unreadable.put(chunk.size(), LinkageResponse.error("Line " + lineNumber + " is not a valid request"));
+                chunk.add(null);
+            }
+            if (chunk.size() == chunkSize) {
+                processChunk(chunk, unreadable, sink);
+                count += chunk.size();
+                chunk.clear();
+                unreadable.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, unreadable, sink);
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    // ---------------- HELPERS ----------------
+    // Results of the readable requests, merged in order with those already settled for the unreadable ones
+    private void processChunk(List<LinkageRequest> chunk, Map<Integer, LinkageResponse> unreadable,
+                              Consumer<LinkageResponse> sink) {
+        if (unreadable.isEmpty()) {
+            processChunk(chunk, sink);
+            return;
+        }
+        List<LinkageRequest> readable = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!unreadable.containsKey(i)) readable.add(chunk.get(i));
+        }
+        Iterator<LinkageResponse> results = collect(readable).iterator();
+        for (int i = 0; i < chunk.size(); i++) {
+            sink.accept(unreadable.containsKey(i) ? unreadable.get(i) : results.next());
+        }
+    }
+
+    private List<LinkageResponse> collect(List<LinkageRequest> chunk) {
+        List<LinkageResponse> results = new ArrayList<>(chunk.size());
+        if (!chunk.isEmpty()) processChunk(chunk, results::add);
+        return results;
+    }
+
+    private void processChunk(List<LinkageRequest> chunk, Consumer<LinkageResponse> sink) {
+        if (!shards.isSharded()) {
+            processOnShard(chunk).forEach(sink);
+            return;
+        }
+        // A transaction holds one shard's connection, so each shard's part of the chunk commits on its own
+        Map<Integer, List<Integer>> byShard = new TreeMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            byShard.computeIfAbsent(linkageService.shardFor(chunk.get(i)), s -> new ArrayList<>()).add(i);
+        }
+        LinkageResponse[] results = new LinkageResponse[chunk.size()];
+        byShard.forEach((shard, indexes) -> {
+            List<LinkageRequest> part = indexes.stream().map(chunk::get).toList();
+            List<LinkageResponse> partResults = shards.callOn(shard, () -> processOnShard(part));
+            for (int i = 0; i < indexes.size(); i++) {
+                results[indexes.get(i)] = partResults.get(i);
+            }
+        });
+        Arrays.asList(results).forEach(sink);
+    }
+
+    private List<LinkageResponse> processOnShard(List<LinkageRequest> chunk) {
+        // UPDATEs that move an identity off its home shard point that shard at it before the chunk holds a connection
+        List<LinkageResponse> unplaceable = new ArrayList<>(chunk.size());
+        for (LinkageRequest req : chunk) {
+            unplaceable.add(linkageService.placeUpdate(req));
+        }
+        try {
+            return txTemplate.execute(status -> {
+                List<LinkageResponse> out = new ArrayList<>(chunk.size());
+                for (int i = 0; i < chunk.size(); i++) {
+                    out.add(unplaceable.get(i) != null ? unplaceable.get(i) : validateAndProcess(chunk.get(i)));
+                }
+                return out;
+            });
+        } catch (RuntimeException e) {
+            // One item broke the chunk transaction: replay the chunk one transaction per item to isolate it
+            List<LinkageResponse> results = new ArrayList<>(chunk.size());
+            for (LinkageRequest req : chunk) {
+                results.add(processIsolated(req));
+            }
+            return results;
+        }
+    }
+
+    // Outside the chunk transaction, so LinkageService runs the item in its own transaction and can retry conflicts
+    private LinkageResponse processIsolated(LinkageRequest req) {
+        try {
+            return validateAndProcess(req);
+        } catch (RuntimeException e) {
+            return LinkageResponse.error("Request failed: " + e.getClass().getSimpleName());
+        }
+    }
+
+    private LinkageResponse validateAndProcess(LinkageRequest req) {
+        if (req == null)
+            return LinkageResponse.error("Request must not be null");
+
+        Set<ConstraintViolation<LinkageRequest>> violations = validator.validate(req);
+        if (!violations.isEmpty()) {
+            return LinkageResponse.error(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+        return linkageService.processRequest(req);
+    }
+}
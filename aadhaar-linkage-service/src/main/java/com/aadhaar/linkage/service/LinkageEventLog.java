@@ -0,0 +1,67 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.LinkageEvent;
+import com.aadhaar.linkage.model.PersonIdentity;
+import com.aadhaar.linkage.repository.LinkageEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Writes an outbox row for each linkage mutation, in the mutation's own transaction, so an event exists exactly
+ * when its change was committed. {@link LinkageEventRelay} moves the rows to the event journal.
+ * Does nothing unless linkage.events.enabled=true.
+ */
+@Component
+public class LinkageEventLog {
+
+    private static final LinkageSource[] SOURCES = LinkageSource.values();
+
+    private final LinkageEventRepository repo;
+    private final boolean enabled;
+
+    public LinkageEventLog(LinkageEventRepository repo, @Value("${linkage.events.enabled:false}") boolean enabled) {
+        this.repo = repo;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Counter values of a record, taken before a mutation so {@link #record} can work out its deltas.
+     */
+    public int[] counters(PersonIdentity p) {
+        if (!enabled || p == null) return null;
+        int[] counters = new int[SOURCES.length];
+        for (LinkageSource s : SOURCES) {
+            counters[s.ordinal()] = p.getCounter(s);
+        }
+        return counters;
+    }
+
+    /**
+     * Records the change from {@code before} (null for a new record) to {@code after}. A call that changed no
+     * counter and retired no key writes nothing.
+     */
+    public void record(String type, String oldKey, String newKey, String source,
+                       int[] before, PersonIdentity after, boolean oldKeyDeleted) {
+        if (!enabled) return;
+        int[] from = before == null ? new int[SOURCES.length] : before;
+        LinkageEvent event = new LinkageEvent();
+        event.setEventType(type);
+        event.setOldKey(oldKey);
+        event.setNewKey(newKey);
+        event.setSource(source);
+        event.setAadhaarDelta(after.getCounter(LinkageSource.AADHAAR) - from[LinkageSource.AADHAAR.ordinal()]);
+        event.setPanDelta(after.getCounter(LinkageSource.PAN) - from[LinkageSource.PAN.ordinal()]);
+        event.setVoterIdDelta(after.getCounter(LinkageSource.VOTER) - from[LinkageSource.VOTER.ordinal()]);
+        event.setDlDelta(after.getCounter(LinkageSource.DRIVING) - from[LinkageSource.DRIVING.ordinal()]);
+        event.setOldKeyDeleted(oldKeyDeleted);
+        boolean changed = event.getAadhaarDelta() != 0 || event.getPanDelta() != 0
+                || event.getVoterIdDelta() != 0 || event.getDlDelta() != 0;
+        if (!changed && !oldKeyDeleted && (oldKey == null || oldKey.equals(newKey)))
+            return;
+        event.setCreatedAt(LocalDateTime.now());
+        repo.save(event);
+    }
+}
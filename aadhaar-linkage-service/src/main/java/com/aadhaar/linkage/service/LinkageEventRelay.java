@@ -0,0 +1,246 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.LinkageEvent;
+import com.aadhaar.linkage.repository.LinkageEventRepository;
+import com.aadhaar.linkage.util.MappedJournal;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves outbox rows ({@link LinkageEventLog}) into the local event journal, which consumers tail by offset.
+ * <p>
+ * Every linkage.events.poll-interval the pending rows of each shard are read in id order, appended to the
+ * journal as one batch (one fsync), and deleted in the same transaction they were read in. If the process dies
+ * between the fsync and the commit, the batch is in the journal but still in the outbox; the last batch-size
+ * events of the journal are remembered at startup so such rows are dropped instead of being relayed twice.
+ * <p>
+ * The journal is local to the node, so only one node relays: the holder of the lease row in
+ * {@code event_relay_lease} on shard 0, renewed before every batch and given up on shutdown. The other nodes
+ * relay nothing until the lease has expired (linkage.events.lease), and then one of them takes over with its
+ * own journal. The rows of a batch are also read with a row lock, so a node that lost the lease mid-batch
+ * cannot relay them a second time.
+ */
+@Component
+@ConditionalOnProperty(name = "linkage.events.enabled", havingValue = "true")
+public class LinkageEventRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkageEventRelay.class);
+
+    private final LinkageEventRepository repo;
+    private final ShardRouter shards;
+    private final TransactionTemplate tx;
+    private final ObjectMapper objectMapper;
+    private final MappedJournal journal;
+    private final JdbcTemplate jdbc;
+    private final int batchSize;
+    private final long leaseSeconds;
+    private final String owner = UUID.randomUUID().toString();
+    private final Map<Integer, Set<Long>> alreadyJournaled = new HashMap<>(); // by shard, guarded by this
+    private final Counter relayed;
+    private final ScheduledExecutorService scheduler;
+
+    public LinkageEventRelay(LinkageEventRepository repo, ShardRouter shards, PlatformTransactionManager txManager,
+                             JdbcTemplate jdbc, ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                             @Value("${linkage.events.dir:./data/events}") Path dir,
+                             @Value("${linkage.events.segment-size:64MB}") DataSize segmentSize,
+                             @Value("${linkage.events.retain-segments:16}") int retainSegments,
+                             @Value("${linkage.events.batch-size:1000}") int batchSize,
+                             @Value("${linkage.events.poll-interval:200ms}") Duration pollInterval,
+                             @Value("${linkage.events.lease:10s}") Duration lease) throws IOException {
+        this.repo = repo;
+        this.shards = shards;
+        this.tx = new TransactionTemplate(txManager);
+        this.jdbc = jdbc;
+        this.objectMapper = objectMapper;
+        this.journal = new MappedJournal(dir, Math.toIntExact(segmentSize.toBytes()), retainSegments);
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseSeconds = Math.max(1, lease.toSeconds());
+        rememberLastBatch();
+        this.relayed = Counter.builder("linkage.events.relayed")
+                .description("Outbox events appended to the event journal")
+                .register(meterRegistry);
+        Gauge.builder("linkage.events.journal.end", journal, MappedJournal::endOffset)
+                .description("End offset of the event journal in bytes")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "linkage-event-relay");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMillis = Math.max(1, pollInterval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::relayQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // ---------------- CONSUMERS ----------------
+    /**
+     * Up to {@code max} journal entries from {@code offset}; resume from the last entry's {@code nextOffset}.
+     */
+    public List<MappedJournal.Entry> read(long offset, int max) {
+        return journal.read(offset, max);
+    }
+
+    public long endOffset() {
+        return journal.endOffset();
+    }
+
+    // ---------------- RELAY ----------------
+    /**
+     * Relays everything pending on every shard, if this node holds (or can take) the relay lease.
+     *
+     * @return number of outbox rows consumed
+     */
+    public synchronized int relayAll() {
+        int total = 0;
+        for (int shard = 0; shard < shards.count(); shard++) {
+            int s = shard;
+            int moved;
+            do {
+                if (!holdLease()) return total;
+                moved = shards.callOn(s, () -> relayBatch(s));
+                total += moved;
+            } while (moved == batchSize);
+        }
+        return total;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            relayAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Final event relay failed; pending events stay in the outbox: {}", e.getClass().getName());
+        }
+        try {
+            // Lets another node take over without waiting for the lease to run out
+            shards.callOn(0, () -> jdbc.update(
+                    "UPDATE event_relay_lease SET owner = NULL WHERE name = 'relay' AND owner = ?", owner));
+        } catch (RuntimeException e) {
+            log.warn("Could not release the event relay lease: {}", e.getClass().getName());
+        }
+        journal.close();
+    }
+
+    // ---------------- HELPERS ----------------
+    // Returns the number of outbox rows consumed (appended or recognised as already journaled)
+    private int relayBatch(int shard) {
+        Set<Long> remembered = alreadyJournaled.computeIfAbsent(shard, s -> new HashSet<>());
+        List<Long> journaled = new ArrayList<>();
+        try {
+            int consumed = tx.execute(status -> {
+                List<LinkageEvent> events = repo.findByOrderByIdAsc(PageRequest.of(0, batchSize));
+                if (events.isEmpty()) return 0;
+                List<byte[]> payloads = new ArrayList<>(events.size());
+                List<Long> ids = new ArrayList<>(events.size());
+                for (LinkageEvent event : events) {
+                    if (remembered.remove(event.getId())) {
+                        journaled.add(event.getId());
+                        continue;
+                    }
+                    payloads.add(payload(shard, event));
+                    ids.add(event.getId());
+                }
+                if (!payloads.isEmpty()) {
+                    try {
+                        journal.append(payloads);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    journaled.addAll(ids);
+                }
+                repo.deleteAllByIdInBatch(events.stream().map(LinkageEvent::getId).toList());
+                relayed.increment(payloads.size());
+                return events.size();
+            });
+            // A short read saw every pending row of the shard, so no remembered id can still be in its outbox
+            if (consumed < batchSize) remembered.clear();
+            return consumed;
+        } catch (RuntimeException e) {
+            // The journal already has these; whenever the rows are read again they must not be appended twice
+            remembered.addAll(journaled);
+            throw e;
+        }
+    }
+
+    // Takes the lease if it is free or expired, or renews it if this node holds it
+    private boolean holdLease() {
+        return shards.callOn(0, () -> jdbc.update("UPDATE event_relay_lease "
+                + "SET owner = ?, expires_at = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND "
+                + "WHERE name = 'relay' AND (owner = ? OR owner IS NULL OR expires_at < CURRENT_TIMESTAMP)",
+                owner, leaseSeconds, owner)) == 1;
+    }
+
+    private void relayQuietly() {
+        try {
+            relayAll();
+        } catch (RuntimeException e) {
+            log.warn("Event relay failed, retrying next poll: {}", e.getClass().getName());
+        }
+    }
+
+    private byte[] payload(int shard, LinkageEvent event) {
+        Map<String, Object> deltas = new LinkedHashMap<>();
+        deltas.put("AADHAAR", event.getAadhaarDelta());
+        deltas.put("PAN", event.getPanDelta());
+        deltas.put("VOTER", event.getVoterIdDelta());
+        deltas.put("DRIVING", event.getDlDelta());
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("shard", shard);
+        map.put("id", event.getId());
+        map.put("type", event.getEventType());
+        map.put("oldKey", event.getOldKey());
+        map.put("newKey", event.getNewKey());
+        map.put("source", event.getSource());
+        map.put("deltas", deltas);
+        map.put("oldKeyDeleted", event.isOldKeyDeleted());
+        map.put("at", event.getCreatedAt());
+        try {
+            return objectMapper.writeValueAsBytes(map);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Only the last batch before a crash can still be in the outbox, and a batch never spans segments unless it
+    // is larger than one, so the last batch-size entries of the last segment are enough
+    private void rememberLastBatch() throws IOException {
+        ArrayDeque<MappedJournal.Entry> last = new ArrayDeque<>(batchSize);
+        for (MappedJournal.Entry entry : journal.read(journal.activeSegmentOffset(), Integer.MAX_VALUE)) {
+            if (last.size() == batchSize) last.removeFirst();
+            last.addLast(entry);
+        }
+        for (MappedJournal.Entry entry : last) {
+            JsonNode node = objectMapper.readTree(entry.payload());
+            alreadyJournaled.computeIfAbsent(node.path("shard").asInt(), s -> new HashSet<>())
+                    .add(node.path("id").asLong());
+        }
+    }
+}
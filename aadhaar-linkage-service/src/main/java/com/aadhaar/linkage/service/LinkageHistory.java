@@ -0,0 +1,322 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.model.PersonIdentity;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Append-only history of UPDATEs: which key replaced which, and what changed.
+ * <p>
+ * An UPDATE gives the person a new key. person_history gets one row for it, pointing at its predecessor and at the
+ * first key of the lineage, with only the fields that differ from the predecessor (delta-encoded: a bitmap of the
+ * changed fields followed by their new values). A row costs what changed, not the width of person_identity, and
+ * outlives the records it links, so "every key this person has had" stays answerable after the older records are
+ * deleted. The lineage is read through the lineage-key index, one query per shard. A replaced record that still
+ * holds other sources is stripped to its key and counters by the UPDATE, since its successor has the rest.
+ * <p>
+ * Compaction folds the deltas older than linkage.history.retention: per lineage, the newest of them takes over the
+ * merged changes and the older ones keep only their links. Lineages stay complete; the intermediate states before
+ * the fold point are given up. History rows live on the shard of their key, next to its record.
+ * Does nothing unless linkage.history.enabled=true.
+ */
+@Component
+public class LinkageHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkageHistory.class);
+
+    private static final byte VERSION = 1;
+
+    // Lineages folded per query of a compaction round
+    private static final int COMPACTION_PAGE = 500;
+
+    /**
+     * Fields tracked by the deltas; the ordinal is the field's bit in {@code changed}, so new ones are appended.
+     */
+    enum Field {
+        AADHAAR_NUMBER(PersonIdentity::getHashedAadhaarNumber),
+        PAN_NUMBER(PersonIdentity::getHashedPanNumber),
+        VOTER_ID(PersonIdentity::getHashedVoterId),
+        DL_NUMBER(PersonIdentity::getHashedDlNumber),
+        FORENAME(PersonIdentity::getHashedForename),
+        SECONDNAME(PersonIdentity::getHashedSecondname),
+        LASTNAME(PersonIdentity::getHashedLastname),
+        DOB(PersonIdentity::getHashedDob),
+        ADDRESS(PersonIdentity::getHashedAddress),
+        GENDER(PersonIdentity::getGender);
+
+        private final Function<PersonIdentity, Object> value;
+
+        Field(Function<PersonIdentity, Object> value) {
+            this.value = value;
+        }
+
+        int bit() {
+            return 1 << ordinal();
+        }
+    }
+
+    private record Step(String key, String predecessor, int depth, String source, Set<Field> changed,
+                        LocalDateTime createdAt) {}
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final Duration retention;
+    private final Duration compactionInterval;
+    private final Counter written;
+    private final Counter folded;
+    private final ScheduledExecutorService compactor;
+
+    public LinkageHistory(DataSource dataSource, ShardRouter shards, PlatformTransactionManager txManager,
+                          MeterRegistry meterRegistry,
+                          @Value("${linkage.history.enabled:false}") boolean enabled,
+                          @Value("${linkage.history.retention:30d}") Duration retention,
+                          @Value("${linkage.history.compaction-interval:1d}") Duration compactionInterval) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.shards = shards;
+        this.tx = new TransactionTemplate(txManager);
+        this.enabled = enabled;
+        this.retention = retention;
+        this.compactionInterval = compactionInterval;
+        this.written = Counter.builder("linkage.history.deltas")
+                .description("History rows written by UPDATE")
+                .register(meterRegistry);
+        this.folded = Counter.builder("linkage.history.folded")
+                .description("History deltas folded into a newer one by compaction")
+                .register(meterRegistry);
+        this.compactor = !enabled ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "history-compaction");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------- WRITES ----------------
+    /**
+     * Records that {@code next} replaced {@code previous}. Call in the UPDATE's transaction, on the shard of both.
+     */
+    public void recordUpdate(PersonIdentity previous, PersonIdentity next, LinkageSource source) {
+        if (!enabled) return;
+        String previousKey = previous.getAadhaarLinkageKey();
+        List<Map<String, Object>> parent = jdbc.queryForList(
+                "SELECT lineage_key, depth FROM person_history WHERE linkage_key = ?", previousKey);
+        String lineage = parent.isEmpty() ? previousKey : (String) parent.get(0).get("lineage_key");
+        int depth = parent.isEmpty() ? 1 : ((Number) parent.get(0).get("depth")).intValue() + 1;
+
+        EnumMap<Field, Object> delta = new EnumMap<>(Field.class);
+        for (Field f : Field.values()) {
+            Object after = f.value.apply(next);
+            if (!Objects.equals(f.value.apply(previous), after)) delta.put(f, after);
+        }
+        jdbc.update("INSERT INTO person_history (linkage_key, lineage_key, predecessor_key, depth, source, changed, "
+                        + "delta, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                next.getAadhaarLinkageKey(), lineage, previousKey, depth, source.name(), changed(delta.keySet()),
+                delta.isEmpty() ? null : encode(delta), Timestamp.valueOf(LocalDateTime.now()));
+        written.increment();
+    }
+
+    // ---------------- LINEAGE ----------------
+    /**
+     * Every key of the person {@code key} belongs to, from the first one on, each with its predecessor and the
+     * fields its UPDATE changed. Keys whose records are gone are included.
+     */
+    public LinkageResponse lineage(String key) {
+        if (!enabled) return LinkageResponse.error("Record history is disabled (linkage.history.enabled)");
+        if (key == null || key.isBlank()) return LinkageResponse.error("AadhaarLinkageKey required for lineage");
+
+        // The row sits with its record, unless the record was deleted before a rebalance moved it
+        String lookup = "SELECT lineage_key FROM person_history WHERE linkage_key = ?";
+        int home = shards.shardForKey(key);
+        String lineage = shards.callOn(home, () -> first(jdbc.queryForList(lookup, String.class, key)))
+                .or(() -> shards.findOnOtherShards(home, shard -> first(jdbc.queryForList(lookup, String.class, key))))
+                .orElse(key);
+
+        List<Step> steps = new ArrayList<>();
+        for (List<Step> fromShard : shards.onAllShards(shard -> jdbc.query(
+                "SELECT linkage_key, predecessor_key, depth, source, changed, created_at FROM person_history "
+                        + "WHERE lineage_key = ? ORDER BY depth",
+                (rs, n) -> new Step(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getString(4),
+                        fields(rs.getInt(5)), rs.getTimestamp(6).toLocalDateTime()), lineage))) {
+            steps.addAll(fromShard);
+        }
+        if (steps.isEmpty() && shards.callOn(home, () -> jdbc.queryForObject(
+                "SELECT COUNT(*) FROM person_identity WHERE aadhaar_linkage_key = ?", Integer.class, key)) == 0)
+            return LinkageResponse.error("No record or history found for key: " + key);
+        steps.sort(Comparator.comparingInt(Step::depth).thenComparing(Step::createdAt));
+
+        List<Map<String, Object>> keys = new ArrayList<>(steps.size() + 1);
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("aadhaarLinkageKey", lineage);
+        keys.add(root);
+        for (Step s : steps) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("aadhaarLinkageKey", s.key());
+            m.put("predecessor", s.predecessor());
+            m.put("source", s.source());
+            m.put("changed", s.changed().stream().map(Field::name).toList());
+            m.put("updatedAt", s.createdAt().toString());
+            keys.add(m);
+        }
+        return LinkageResponse.success("Lineage has " + keys.size() + (keys.size() == 1 ? " key" : " keys"), keys);
+    }
+
+    // ---------------- COMPACTION ----------------
+    /**
+     * Folds the deltas older than linkage.history.retention on every shard.
+     *
+     * @return number of deltas folded
+     */
+    public long compact() {
+        if (!enabled) return 0;
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(retention));
+        long total = 0;
+        for (long fromShard : shards.onAllShards(shard -> compactShard(cutoff))) {
+            total += fromShard;
+        }
+        if (total > 0) log.info("History compaction folded {} deltas", total);
+        return total;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleCompaction() {
+        if (compactor == null) return;
+        long periodMillis = Math.max(1, compactionInterval.toMillis());
+        compactor.scheduleWithFixedDelay(this::compactQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (compactor != null) compactor.shutdownNow();
+    }
+
+    // ---------------- HELPERS ----------------
+    private long compactShard(Timestamp cutoff) {
+        long count = 0;
+        String after = "";
+        while (true) {
+            List<String> lineages = jdbc.queryForList("SELECT lineage_key FROM person_history "
+                    + "WHERE created_at < ? AND delta IS NOT NULL AND lineage_key > ? GROUP BY lineage_key "
+                    + "HAVING COUNT(*) > 1 ORDER BY lineage_key LIMIT " + COMPACTION_PAGE, String.class, cutoff, after);
+            if (lineages.isEmpty()) return count;
+            after = lineages.get(lineages.size() - 1);
+            for (String lineage : lineages) {
+                Integer n = tx.execute(status -> fold(lineage, cutoff));
+                count += n == null ? 0 : n;
+            }
+        }
+    }
+
+    // Merges the old deltas of one lineage, in depth order, into the newest of them
+    private int fold(String lineage, Timestamp cutoff) {
+        List<Object[]> rows = jdbc.query("SELECT linkage_key, delta FROM person_history "
+                        + "WHERE lineage_key = ? AND created_at < ? AND delta IS NOT NULL ORDER BY depth, created_at",
+                (rs, n) -> new Object[]{rs.getString(1), rs.getBytes(2)}, lineage, cutoff);
+        if (rows.size() < 2) return 0;
+        EnumMap<Field, Object> merged = new EnumMap<>(Field.class);
+        for (Object[] row : rows) {
+            merged.putAll(decode((byte[]) row[1]));
+        }
+        String newest = (String) rows.get(rows.size() - 1)[0];
+        jdbc.update("UPDATE person_history SET changed = ?, delta = ? WHERE linkage_key = ?",
+                changed(merged.keySet()), encode(merged), newest);
+        List<Object[]> older = rows.subList(0, rows.size() - 1).stream().map(row -> new Object[]{row[0]}).toList();
+        jdbc.batchUpdate("UPDATE person_history SET changed = 0, delta = NULL WHERE linkage_key = ?", older);
+        folded.increment(older.size());
+        return older.size();
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("History compaction failed, retrying next round: {}", e.getClass().getName());
+        }
+    }
+
+    private static int changed(Set<Field> fields) {
+        int bits = 0;
+        for (Field f : fields) bits |= f.bit();
+        return bits;
+    }
+
+    private static Set<Field> fields(int changed) {
+        Set<Field> fields = EnumSet.noneOf(Field.class);
+        for (Field f : Field.values()) {
+            if ((changed & f.bit()) != 0) fields.add(f);
+        }
+        return fields;
+    }
+
+    private static <T> Optional<T> first(List<T> rows) {
+        return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+    }
+
+    // ---------------- DELTA FORMAT ----------------
+    // [version][int changed] then per changed field, in ordinal order: [present][32-byte hash | UTF string]
+    static byte[] encode(EnumMap<Field, Object> delta) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 33 * delta.size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeInt(changed(delta.keySet()));
+            for (Map.Entry<Field, Object> e : delta.entrySet()) {
+                Object value = e.getValue();
+                out.writeBoolean(value != null);
+                if (value instanceof IdentityHash h) out.write(h.toBytes());
+                else if (value != null) out.writeUTF((String) value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static EnumMap<Field, Object> decode(byte[] delta) {
+        EnumMap<Field, Object> values = new EnumMap<>(Field.class);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta))) {
+            if (in.readByte() != VERSION) throw new IOException("unknown history delta version");
+            for (Field f : fields(in.readInt())) {
+                if (!in.readBoolean()) {
+                    values.put(f, null);
+                } else if (f == Field.GENDER) {
+                    values.put(f, in.readUTF());
+                } else {
+                    byte[] digest = new byte[IdentityHash.LENGTH];
+                    in.readFully(digest);
+                    values.put(f, IdentityHash.wrap(digest));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return values;
+    }
+}
@@ -1,125 +1,428 @@
 package com.aadhaar.linkage.service;
 
+import com.aadhaar.linkage.dto.LinkageAction;
 import com.aadhaar.linkage.dto.LinkageRequest;
 import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.dto.PersonData;
+import com.aadhaar.linkage.model.IdentityHash;
 import com.aadhaar.linkage.model.PersonIdentity;
 import com.aadhaar.linkage.repository.LinkageRepository;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class LinkageService {
 
-    private final LinkageRepository repo;
+    private static final Logger log = LoggerFactory.getLogger(LinkageService.class);
 
-    public LinkageService(LinkageRepository repo) {
+    private final LinkageRepository repo;
+    private final IdentityHasher hasher;
+    private final IdentityCache cache;
+    private final IdentityLocks locks;
+    private final ShardRouter shards;
+    private final LinkageEventLog events;
+    private final IdentityBlocking blocking;
+    private final DocumentLookupService documents;
+    private final MatchKeyFilter matchFilter;
+    private final MatchPointers pointers;
+    private final LinkageWriteBehind writeBehind;
+    private final LinkageHistory history;
+    private final ReplicaRouter replicas;
+    private final PersonViewCache views;
+    private final MeterRegistry meterRegistry;
+    private final TransactionTemplate writeTx;
+    private final TransactionTemplate readTx;
+    private final int maxAttempts;
+    private final long slowRequestNanos;
+
+    public LinkageService(LinkageRepository repo, IdentityHasher hasher, IdentityCache cache,
+                          IdentityLocks locks, ShardRouter shards, LinkageEventLog events,
+                          IdentityBlocking blocking, DocumentLookupService documents,
+                          MatchKeyFilter matchFilter, MatchPointers pointers, LinkageWriteBehind writeBehind,
+                          LinkageHistory history,
+                          ReplicaRouter replicas, PersonViewCache views,
+                          MeterRegistry meterRegistry,
+                          PlatformTransactionManager txManager,
+                          @Value("${linkage.retry.max-attempts:5}") int maxAttempts,
+                          @Value("${linkage.logging.slow-request:500ms}") Duration slowRequest) {
         this.repo = repo;
+        this.hasher = hasher;
+        this.cache = cache;
+        this.locks = locks;
+        this.shards = shards;
+        this.events = events;
+        this.blocking = blocking;
+        this.documents = documents;
+        this.matchFilter = matchFilter;
+        this.pointers = pointers;
+        this.writeBehind = writeBehind;
+        this.history = history;
+        this.replicas = replicas;
+        this.views = views;
+        this.meterRegistry = meterRegistry;
+        this.writeTx = new TransactionTemplate(txManager);
+        this.readTx = new TransactionTemplate(txManager);
+        this.readTx.setReadOnly(true);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.slowRequestNanos = slowRequest.toNanos();
     }
 
     // ---------------- MAIN DISPATCHER ----------------
+    /**
+     * Runs the action in one transaction. If another writer committed a change to the same record first
+     * (optimistic-lock conflict), the action is re-read and re-applied, up to linkage.retry.max-attempts times.
+     * INSERT and UPDATE also hold the lock stripe of the person's identity-match key for the whole transaction,
+     * so two feeds submitting the same new person cannot both create a key.
+     * With sharded storage the transaction runs on the shard the request routes to ({@link #shardFor}).
+     * Inside an existing transaction (a batch chunk) it joins that transaction, on the shard the caller
+     * chose, and conflicts propagate.
+     * In write-behind mode (linkage.write-behind.enabled) an INSERT is journaled and answered right away
+     * ({@link LinkageWriteBehind}); other actions on a key with queued INSERTs wait until those are written.
+     * With a read replica (linkage.replica.enabled) a SEARCH reads from the replica in a read-only transaction,
+     * unless this node wrote the key recently ({@link ReplicaRouter}); a miss there is re-read on the primary.
+     * Every call is timed as linkage.requests, tagged by action, source and outcome; calls slower than
+     * linkage.logging.slow-request are also logged, without any request data.
+     */
     public LinkageResponse processRequest(LinkageRequest req) {
-        String action = req.getAction().trim().toUpperCase(Locale.ROOT);
+        LinkageAction action = req.getActionType();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        LinkageResponse response = null;
+        try {
+            response = execute(action, req);
+            return response;
+        } finally {
+            Timer timer = requestTimer(action, req.getSource() == null ? "NONE" : tag(req.getSourceType()), response);
+            long nanos = sample.stop(timer);
+            if (nanos >= slowRequestNanos) {
+                Meter.Id id = timer.getId();
+                log.warn("Slow linkage request action={} source={} outcome={} took {} ms",
+                        id.getTag("action"), id.getTag("source"), id.getTag("outcome"), Duration.ofNanos(nanos).toMillis());
+            }
+        }
+    }
+
+    private LinkageResponse execute(LinkageAction action, LinkageRequest req) {
+        HashedIdentity hashed = action == LinkageAction.INSERT || action == LinkageAction.UPDATE
+                ? hasher.hash(req.getPersonData()) : null;
+        if (action == LinkageAction.INSERT && writeBehind.isEnabled())
+            return enqueueInsert(req, hashed);
+        if (action != null && !writeBehind.awaitFlushed(req.getOldAadhaarLinkageKey()))
+            return LinkageResponse.error("Queued INSERT for key " + req.getOldAadhaarLinkageKey()
+                    + " is not written yet, try again later");
+        if (TransactionSynchronizationManager.isActualTransactionActive())
+            return dispatch(action, req, hashed);
+        if (action == LinkageAction.SEARCH && replicas.mayRead(req.getOldAadhaarLinkageKey())) {
+            LinkageResponse response = searchOnReplica(req);
+            if (response != null)
+                return response;
+        }
+
+        return shards.callOn(route(action, req, hashed), () -> {
+            Lock lock = hashed == null ? null : locks.forIdentity(hashed.getMatchKey());
+            if (lock != null)
+                lock.lock();
+            try {
+                LinkageResponse unplaceable = action == LinkageAction.UPDATE ? placeUpdate(req, hashed) : null;
+                return unplaceable != null ? unplaceable : executeWithRetry(action, req, hashed);
+            } finally {
+                if (lock != null)
+                    lock.unlock();
+            }
+        });
+    }
+
+    private LinkageResponse executeWithRetry(LinkageAction action, LinkageRequest req, HashedIdentity hashed) {
+        TransactionTemplate tx = action == LinkageAction.SEARCH ? readTx : writeTx;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return tx.execute(status -> {
+                    LinkageResponse response = dispatch(action, req, hashed);
+                    if ("ERROR".equals(response.getStatus()))
+                        status.setRollbackOnly();
+                    return response;
+                });
+            } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                // A unique-key clash on INSERT means another node inserted this person first: re-reading finds it
+                if (e instanceof DataIntegrityViolationException && action != LinkageAction.INSERT)
+                    return LinkageResponse.error("Identity details conflict with another existing record");
+                // The match-key filter may have ruled the other insert out; the retry must query
+                if (hashed != null)
+                    matchFilter.add(hashed.getMatchKey());
+                evictConflicting(e, req);
+                meterRegistry.counter("linkage.retries", "action", action.name()).increment();
+                if (attempt >= maxAttempts)
+                    return LinkageResponse.error("Record was modified concurrently, gave up after " + attempt + " attempts");
+                if (!backoff(attempt))
+                    return LinkageResponse.error("Interrupted while retrying " + action);
+            }
+        }
+    }
+
+    // ---------------- READ REPLICA ----------------
+    // Null when the primary has to answer: the replica has no such record (yet), or is unavailable
+    private LinkageResponse searchOnReplica(LinkageRequest req) {
+        try {
+            LinkageResponse response = replicas.callOnReplica(() -> readTx.execute(status -> searchRecord(req, true)));
+            if (!"ERROR".equals(response.getStatus()))
+                return response;
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Replica read failed, answering from the primary: {}", e.getClass().getName());
+        }
+        replicas.fellBack();
+        return null;
+    }
+
+    // ---------------- SHARD ROUTING ----------------
+    /**
+     * Shard a request has to run on, for callers that open the transaction themselves (batch chunks).
+     */
+    public int shardFor(LinkageRequest req) {
+        LinkageAction action = req == null ? null : req.getActionType();
+        if (!shards.isSharded() || action == null)
+            return 0;
+        return route(action, req, action == LinkageAction.INSERT ? hasher.hash(req.getPersonData()) : null);
+    }
+
+    // INSERT goes wherever the person already lives, else to its home shard; the rest follow the linkage key
+    private int route(LinkageAction action, LinkageRequest req, HashedIdentity hashed) {
+        if (!shards.isSharded() || action == null)
+            return 0;
+        if (action == LinkageAction.INSERT)
+            return hashed.getMatchKey() == null ? 0 : locate(hashed.getMatchKey());
+        String key = req.getOldAadhaarLinkageKey();
+        return key == null || key.isBlank() ? 0 : shards.shardForKey(key);
+    }
+
+    private int locate(IdentityHash matchKey) {
+        int home = shards.shardForMatch(matchKey);
+        boolean mightExist = matchFilter.mightExist(matchKey);
+        // One lookup on the home shard: the person itself, or the pointer to the shard an UPDATE or a rebalance
+        // left it on (MatchPointers). A new person misses both and stays on its home shard; no other shard is asked.
+        // The filter may only skip the person: the unique match key that backs it up is not checked across shards
+        Optional<String> key = shards.callOn(home, () -> readTx.execute(status -> {
+            Optional<String> person = mightExist
+                    ? cache.findByMatch(matchKey).map(PersonIdentity::getAadhaarLinkageKey) : Optional.empty();
+            return person.or(() -> pointers.find(matchKey));
+        }));
+        // A pointer the filter ruled out means it missed a key written elsewhere; the INSERT must query for it
+        if (key.isPresent() && !mightExist)
+            matchFilter.add(matchKey);
+        return key.map(shards::shardForKey).orElse(home);
+    }
+
+    /**
+     * Before an UPDATE's transaction starts: the new record stays on the old one's shard, so if that is not the
+     * new identity's home shard, the home shard is pointed at it first ({@link MatchPointers}). For callers that
+     * open the transaction themselves (batch chunks); run it before they do.
+     *
+     * @return the error to answer if another shard already holds the new identity, else {@code null}
+     */
+    LinkageResponse placeUpdate(LinkageRequest req) {
+        if (!shards.isSharded() || req == null || req.getActionType() != LinkageAction.UPDATE)
+            return null;
+        return placeUpdate(req, hasher.hash(req.getPersonData()));
+    }
+
+    private LinkageResponse placeUpdate(LinkageRequest req, HashedIdentity hashed) {
+        String oldKey = req.getOldAadhaarLinkageKey();
+        if (!shards.isSharded() || hashed == null || oldKey == null || oldKey.isBlank())
+            return null;
+        return pointers.place(hashed.getMatchKey(), oldKey)
+                ? null : LinkageResponse.error("Identity details conflict with another existing record");
+    }
+
+    private LinkageResponse dispatch(LinkageAction action, LinkageRequest req, HashedIdentity hashed) {
+        if (action == null)
+            return LinkageResponse.error("Invalid action: " + req.getAction());
         switch (action) {
-            case "INSERT": return insertRecord(req);
-            case "UPDATE": return updateRecord(req);
-            case "DELETE": return deleteRecord(req);
-            case "SEARCH": return searchRecord(req);
-            default: return LinkageResponse.error("Invalid action: " + req.getAction());
+            case INSERT: return insertRecord(req, hashed);
+            case UPDATE: return updateRecord(req, hashed);
+            case DELETE: return deleteRecord(req);
+            default: return searchRecord(req, false);
         }
     }
 
     // ---------------- INSERT ----------------
-    private LinkageResponse insertRecord(LinkageRequest req) {
-        Map<String, String> data = req.getData();
+    private LinkageResponse insertRecord(LinkageRequest req, HashedIdentity hashed) {
+        PersonData data = req.getPersonData();
         if (data == null || data.isEmpty())
             return LinkageResponse.error("Data is required for INSERT");
 
-        String forename = normalize(data.get("forename"));
-        String dob = normalize(data.get("dob"));
-        if (forename == null || dob == null)
+        if (hashed.getMatchKey() == null)
             return LinkageResponse.error("Forename and DOB required to identify person");
 
-        String hForename = hash(forename);
-        String hDob = hash(dob);
-
-        // Check if person already exists
-        Optional<PersonIdentity> existingOpt = repo.findByHashedForenameAndHashedDob(hForename, hDob);
+        // Check if person already exists, unless the match-key filter rules it out without a query
+        boolean mightExist = matchFilter.mightExist(hashed.getMatchKey());
+        Optional<PersonIdentity> existingOpt = mightExist ? cache.findByMatch(hashed.getMatchKey()) : Optional.empty();
+        matchFilter.recordCheck(mightExist, existingOpt.isPresent());
+
+        // No exact match: look for near-duplicates (typos, extra name parts) in the blocking index
+        IdentityBlocking.Tokens tokens = null;
+        List<IdentityBlocking.Candidate> possibleDuplicates = List.of();
+        if (existingOpt.isEmpty() && blocking.isEnabled()) {
+            tokens = blocking.tokens(data.getForename(), data.getDob());
+            possibleDuplicates = blocking.candidates(tokens);
+            if (!possibleDuplicates.isEmpty() && blocking.autoLinks(possibleDuplicates.get(0))) {
+                existingOpt = cache.findByKey(possibleDuplicates.get(0).linkageKey());
+                possibleDuplicates = List.of();
+            }
+        }
         PersonIdentity person;
         boolean createdNew = false;
+        int[] before = null;
 
         if (existingOpt.isPresent()) {
             person = existingOpt.get();
+            before = events.counters(person);
         } else {
-            person = new PersonIdentity();
-            person.setAadhaarLinkageKey(UUID.randomUUID().toString());
-            person.setHashedForename(hForename);
-            person.setHashedSecondname(hash(data.get("secondname")));
-            person.setHashedLastname(hash(data.get("lastname")));
-            person.setHashedDob(hDob);
-            person.setHashedAadhaarNumber(hash(data.get("aadhaar_number")));
-            person.setHashedPanNumber(hash(data.get("pan_number")));
-            person.setHashedDlNumber(hash(data.get("dl_number")));
-            person.setHashedVoterId(hash(data.get("voter_id")));
-            person.setHashedAddress(hash(data.get("address")));
-            person.setGender(data.get("gender"));
-            initCounters(person);
+            person = newPerson(shards.newKey(), hashed, data.getGender());
             createdNew = true;
         }
 
-        // Based on source, set counter = 1 if inserting for first time
-        String source = req.getSource().toUpperCase(Locale.ROOT);
-        switch (source) {
-            case "AADHAAR":
-                if (createdNew || person.getAadhaarCounter() == 0) {
-                    person.setAadhaarCounter(1);
-                    person.setHashedAadhaarNumber(hash(data.get("aadhaar_number")));
-                }
-                break;
-            case "PAN":
-                if (createdNew || person.getPanCounter() == 0) {
-                    person.setPanCounter(1);
-                    person.setHashedPanNumber(hash(data.get("pan_number")));
-                }
-                break;
-            case "VOTER":
-                if (createdNew || person.getVoterIdCounter() == 0) {
-                    person.setVoterIdCounter(1);
-                    person.setHashedVoterId(hash(data.get("voter_id")));
-                }
-                break;
-            case "DRIVING":
-                if (createdNew || person.getDlCounter() == 0) {
-                    person.setDlCounter(1);
-                    person.setHashedDlNumber(hash(data.get("dl_number")));
-                }
-                break;
-            default:
-                return LinkageResponse.error("Invalid source: " + source);
+        LinkageSource source = req.getSourceType();
+        if (source == null)
+            return LinkageResponse.error("Invalid source: " + req.getSource());
+        addSource(person, source, hashed);
+
+        cache.put(repo.save(person));
+        documents.remember(person);
+        written(person.getAadhaarLinkageKey());
+        if (createdNew) {
+            matchFilter.add(person.getIdentityMatchKey());
+            blocking.index(person.getAadhaarLinkageKey(), tokens);
         }
+        events.record("INSERT", createdNew ? null : person.getAadhaarLinkageKey(), person.getAadhaarLinkageKey(),
+                source.name(), before, person, false);
 
-        repo.save(person);
+        Map<String, Object> summary = summary(person);
+        putPossibleDuplicates(summary, possibleDuplicates);
         return LinkageResponse.success(
                 existingOpt.isPresent() ? "Record updated with new source" : "Record inserted successfully",
-                summary(person)
+                summary
         );
     }
 
+    // ---------------- INSERT (WRITE-BEHIND) ----------------
+    private record Target(String key, boolean existing, IdentityBlocking.Tokens tokens,
+                          List<IdentityBlocking.Candidate> possibleDuplicates) {}
+
+    // Settles the key now (the person's, or a new one on its home shard), journals the request and answers
+    private LinkageResponse enqueueInsert(LinkageRequest req, HashedIdentity hashed) {
+        PersonData data = req.getPersonData();
+        if (data == null || data.isEmpty())
+            return LinkageResponse.error("Data is required for INSERT");
+        if (hashed.getMatchKey() == null)
+            return LinkageResponse.error("Forename and DOB required to identify person");
+        LinkageSource source = req.getSourceType();
+        if (source == null)
+            return LinkageResponse.error("Invalid source: " + req.getSource());
+
+        Lock lock = locks.forIdentity(hashed.getMatchKey());
+        lock.lock();
+        try {
+            QueuedInsert queued = writeBehind.queued(hashed.getMatchKey());
+            Target target = queued != null
+                    ? new Target(queued.key(), queued.existing(), queued.tokens(), List.of())
+                    : shards.callOn(route(LinkageAction.INSERT, req, hashed),
+                            () -> readTx.execute(status -> target(data, hashed)));
+            writeBehind.append(new QueuedInsert(target.key(), target.existing(), source, hashed, data.getGender(),
+                    target.tokens()));
+            // A cached GET of the key would not wait for the flush
+            views.evict(target.key());
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("aadhaarLinkageKey", target.key());
+            putPossibleDuplicates(summary, target.possibleDuplicates());
+            return LinkageResponse.success("Record queued", summary);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Same decision as insertRecord: exact match, else an auto-linked near-duplicate, else a new key
+    private Target target(PersonData data, HashedIdentity hashed) {
+        boolean mightExist = matchFilter.mightExist(hashed.getMatchKey());
+        Optional<PersonIdentity> existing = mightExist ? cache.findByMatch(hashed.getMatchKey()) : Optional.empty();
+        matchFilter.recordCheck(mightExist, existing.isPresent());
+        if (existing.isPresent())
+            return new Target(existing.get().getAadhaarLinkageKey(), true, null, List.of());
+
+        IdentityBlocking.Tokens tokens = blocking.tokens(data.getForename(), data.getDob());
+        List<IdentityBlocking.Candidate> candidates = blocking.candidates(tokens);
+        if (!candidates.isEmpty() && blocking.autoLinks(candidates.get(0)))
+            return new Target(candidates.get(0).linkageKey(), true, null, List.of());
+        return new Target(shards.newKey(), false, tokens, candidates);
+    }
+
+    /**
+     * Writes the queued INSERTs of one identity, in journal order, in the current transaction: one lookup and
+     * one row write for all of them. {@link LinkageWriteBehind} passes only records not applied before.
+     *
+     * @return linkage key of the record they went to: the queued key, unless another node created the person first
+     */
+    String applyQueued(List<QueuedInsert> group) {
+        QueuedInsert first = group.get(0);
+        Optional<PersonIdentity> existing = first.existing() ? cache.findByKey(first.key()) : Optional.empty();
+        if (existing.isEmpty() && matchFilter.mightExist(first.matchKey()))
+            existing = cache.findByMatch(first.matchKey());
+        boolean createdNew = existing.isEmpty();
+        PersonIdentity person = existing.orElseGet(() -> newPerson(first.key(), first.hashed(), first.gender()));
+
+        for (QueuedInsert insert : group) {
+            boolean created = createdNew && insert == first;
+            int[] before = created ? null : events.counters(person);
+            addSource(person, insert.source(), insert.hashed());
+            events.record("INSERT", created ? null : person.getAadhaarLinkageKey(), person.getAadhaarLinkageKey(),
+                    insert.source().name(), before, person, false);
+        }
+
+        cache.put(repo.save(person));
+        documents.remember(person);
+        written(person.getAadhaarLinkageKey());
+        if (createdNew) {
+            matchFilter.add(person.getIdentityMatchKey());
+            blocking.index(person.getAadhaarLinkageKey(), first.tokens());
+        }
+        return person.getAadhaarLinkageKey();
+    }
+
     // ---------------- UPDATE ----------------
     
-    private LinkageResponse updateRecord(LinkageRequest req) {
+    private LinkageResponse updateRecord(LinkageRequest req, HashedIdentity hashed) {
 
         String oldKey = req.getOldAadhaarLinkageKey();
         if (oldKey == null || oldKey.isBlank())
             return LinkageResponse.error("Old AadhaarLinkageKey is required for UPDATE");
 
-        Optional<PersonIdentity> opt = repo.findById(oldKey);
+        Optional<PersonIdentity> opt = cache.findByKey(oldKey);
         if (opt.isEmpty())
-            return LinkageResponse.error("No record found for key: " + oldKey);
+            return LinkageResponse.notFound("No record found for key: " + oldKey);
 
         PersonIdentity oldRecord = opt.get();
-        String source = req.getSource().toUpperCase(Locale.ROOT);
-        Map<String, String> newData = req.getData();
+        LinkageSource source = req.getSourceType();
+        if (source == null)
+            return LinkageResponse.error("Invalid source: " + req.getSource());
+        int[] before = events.counters(oldRecord);
+        PersonData newData = req.getPersonData();
 
         // ---------------------------
         // STEP 1: CREATE NEW RECORD
@@ -128,74 +431,68 @@ public class LinkageService {
 
         // Copy all old values
         newRecord.setHashedAadhaarNumber(oldRecord.getHashedAadhaarNumber());
-        System.out.println("aadhaar number: "+ newRecord.getHashedAadhaarNumber());
         newRecord.setHashedPanNumber(oldRecord.getHashedPanNumber());
-        System.out.println("pan number: "+ newRecord.getHashedPanNumber());
         newRecord.setHashedDlNumber(oldRecord.getHashedDlNumber());
-        System.out.println("Dl number: "+newRecord.getHashedDlNumber());
         newRecord.setHashedVoterId(oldRecord.getHashedVoterId());
 
         // Copy counters
-        newRecord.setAadhaarCounter(oldRecord.getAadhaarCounter());
-        newRecord.setPanCounter(oldRecord.getPanCounter());
-        newRecord.setVoterIdCounter(oldRecord.getVoterIdCounter());
-        newRecord.setDlCounter(oldRecord.getDlCounter());
+        newRecord.setSourceCounters(oldRecord.getSourceCounters());
 
-        // NEW UNIQUE KEY
-        newRecord.setAadhaarLinkageKey(UUID.randomUUID().toString());
+        // NEW UNIQUE KEY, on the old record's shard so both change in one transaction
+        newRecord.setAadhaarLinkageKey(shards.newKey());
 
         // Replace PII with NEW hashed values
-        newRecord.setHashedAddress(hash(newData.get("address")));
-        newRecord.setHashedForename(hash(newData.get("forename")));
-        newRecord.setHashedSecondname(hash(newData.get("secondname")));
-        newRecord.setHashedLastname(hash(newData.get("lastname")));
-        newRecord.setGender(newData.get("gender"));
-        newRecord.setHashedDob(hash(newData.get("dob")));
-
-        // Reset only the target source counter to 1
-        switch (source) {
-            case "AADHAAR": 
-            	newRecord.setAadhaarCounter(oldRecord.getAadhaarCounter()+1);
-            	newRecord.setHashedAadhaarNumber(hash(newData.get("aadhaar_number")));
-            	oldRecord.setAadhaarCounter(oldRecord.getAadhaarCounter() - 1);
-            	break;
-            case "PAN":     
-            	newRecord.setPanCounter(oldRecord.getPanCounter()+1); 
-            	newRecord.setHashedPanNumber(hash(newData.get("pan_number")));
-            	oldRecord.setPanCounter(oldRecord.getPanCounter() - 1);
-            	break;
-            case "VOTER":   
-            	newRecord.setVoterIdCounter(oldRecord.getVoterIdCounter()+1); 
-            	newRecord.setHashedVoterId(hash(newData.get("voter_id")));
-            	oldRecord.setVoterIdCounter(oldRecord.getVoterIdCounter() - 1);
-            	break;
-            case "DRIVING": 
-            	newRecord.setDlCounter(oldRecord.getDlCounter()+1); 
-            	newRecord.setHashedDlNumber(hash(newData.get("dl_number")));
-            	oldRecord.setDlCounter(oldRecord.getDlCounter()-1);
-            	break;
-            default:
-                return LinkageResponse.error("Invalid source: " + source);
+        newRecord.setHashedAddress(hashed.getAddress());
+        newRecord.setHashedForename(hashed.getForename());
+        newRecord.setHashedSecondname(hashed.getSecondname());
+        newRecord.setHashedLastname(hashed.getLastname());
+        newRecord.setGender(newData.getGender());
+        newRecord.setHashedDob(hashed.getDob());
+
+        // The newest record answers identity matches, so it takes the match key over from the old one
+        newRecord.setIdentityMatchKey(hashed.getMatchKey());
+        if (hashed.getMatchKey() != null && hashed.getMatchKey().equals(oldRecord.getIdentityMatchKey())) {
+            oldRecord.setIdentityMatchKey(null);
+            // Flush now: Hibernate runs inserts before updates, and the new row needs the unique key released
+            oldRecord = repo.saveAndFlush(oldRecord);
+            blocking.remove(oldKey);
         }
+        blocking.index(newRecord.getAadhaarLinkageKey(), blocking.tokens(newData.getForename(), newData.getDob()));
+
+        // Move the target source over: one more on the new record, one less (not below zero) on the old
+        newRecord.setCounter(source, oldRecord.getCounter(source) + 1);
+        newRecord.setHashedDocument(source, hashed.document(source));
+        oldRecord.setCounter(source, oldRecord.getCounter(source) - 1);
 
-        repo.save(newRecord);
+        newRecord = repo.save(newRecord);
+        documents.remember(newRecord);
+        matchFilter.add(newRecord.getIdentityMatchKey());
+        history.recordUpdate(oldRecord, newRecord, source);
+        written(oldKey);
+        written(newRecord.getAadhaarLinkageKey());
 
         // If all counters become zero, delete old
-        boolean allZero =
-                oldRecord.getAadhaarCounter() == 0 &&
-                oldRecord.getPanCounter() == 0 &&
-                oldRecord.getVoterIdCounter() == 0 &&
-                oldRecord.getDlCounter() == 0;
+        boolean allZero = oldRecord.getSourceMask() == 0;
 
+        events.record("UPDATE", oldKey, newRecord.getAadhaarLinkageKey(), source.name(), before, oldRecord, allZero);
         if (allZero) {
             repo.delete(oldRecord);
+            blocking.remove(oldKey);
+            cache.evict(oldRecord);
+            cache.put(newRecord);
             return LinkageResponse.success(
                     "Update complete. Old record deleted because all counters reached zero.",
                     Map.of("newAadhaarLinkageKey", newRecord.getAadhaarLinkageKey())
             );
         }
 
-        repo.save(oldRecord);
+        // With history on, the new record carries the identity data and person_history links the two keys:
+        // the old record keeps only its key and counters
+        if (history.isEnabled())
+            supersede(oldRecord);
+        cache.put(repo.save(oldRecord));
+        // New record last, so the identity match points at the newest key
+        cache.put(newRecord);
 
         return LinkageResponse.success(
                 "Update complete. Old record updated.",
@@ -209,82 +506,148 @@ public class LinkageService {
         if (key == null || key.isBlank())
             return LinkageResponse.error("AadhaarLinkageKey required for DELETE");
 
-        Optional<PersonIdentity> opt = repo.findById(key);
+        Optional<PersonIdentity> opt = cache.findByKey(key);
         if (opt.isEmpty())
-            return LinkageResponse.error("Record not found for key: " + key);
+            return LinkageResponse.notFound("Record not found for key: " + key);
 
         PersonIdentity p = opt.get();
-        String source = req.getSource().toUpperCase(Locale.ROOT);
-
-        switch (source) {
-            case "AADHAAR":
-                p.setAadhaarCounter(0);
-                break;
-            case "PAN":
-                p.setPanCounter(0);
-                break;
-            case "VOTER":
-                p.setVoterIdCounter(0);
-                break;
-            case "DRIVING":
-                p.setDlCounter(0);
-                break;
-            default:
-                return LinkageResponse.error("Invalid source for delete: " + source);
-        }
+        LinkageSource source = req.getSourceType();
+        if (source == null)
+            return LinkageResponse.error("Invalid source for delete: " + req.getSource());
+        int[] before = events.counters(p);
+
+        p.setCounter(source, 0);
+        written(key);
 
         // If all counters = 0, delete the record
-        if (p.getAadhaarCounter() == 0 && p.getPanCounter() == 0 &&
-            p.getVoterIdCounter() == 0 && p.getDlCounter() == 0) {
+        if (p.getSourceMask() == 0) {
             repo.delete(p);
+            blocking.remove(key);
+            cache.evict(p);
+            events.record("DELETE", key, null, source.name(), before, p, true);
             return LinkageResponse.success("All sources removed — record deleted completely");
         }
 
-        repo.save(p);
+        cache.put(repo.save(p));
+        events.record("DELETE", key, key, source.name(), before, p, false);
         return LinkageResponse.success("Source deleted successfully", summary(p));
     }
 
     // ---------------- SEARCH ----------------
-    private LinkageResponse searchRecord(LinkageRequest req) {
+    // Replica rows never enter the shared cache: one that raced a local write would be served in its place
+    private LinkageResponse searchRecord(LinkageRequest req, boolean onReplica) {
         String key = req.getOldAadhaarLinkageKey();
         if (key == null || key.isBlank())
             return LinkageResponse.error("AadhaarLinkageKey required for SEARCH");
 
-        Optional<PersonIdentity> opt = repo.findById(key);
+        Optional<PersonIdentity> opt = onReplica ? cache.findByKeyUncached(key) : cache.findByKey(key);
         if (opt.isEmpty())
-            return LinkageResponse.error("Record not found for key: " + key);
+            return LinkageResponse.notFound("Record not found for key: " + key);
 
-        return LinkageResponse.success("Record found", summary(opt.get()));
+        // The version changes with every write: clients and GET /{key} (its ETag) can tell whether it changed
+        Map<String, Object> summary = summary(opt.get());
+        summary.put("version", opt.get().getVersion());
+        return LinkageResponse.success("Record found", summary);
     }
 
     // ---------------- HELPERS ----------------
-    private void initCounters(PersonIdentity p) {
-        p.setAadhaarCounter(0);
-        p.setPanCounter(0);
-        p.setVoterIdCounter(0);
-        p.setDlCounter(0);
+    // Unknown actions and sources are tagged INVALID so bad input cannot create new time series; a SEARCH by
+    // GET /{key} has no source at all and is tagged NONE
+    private Timer requestTimer(LinkageAction action, String source, LinkageResponse response) {
+        return Timer.builder("linkage.requests")
+                .description("LinkageService.processRequest calls")
+                .tag("action", tag(action))
+                .tag("source", source)
+                .tag("outcome", response == null ? "EXCEPTION" : response.getStatus())
+                .register(meterRegistry);
+    }
+
+    private static String tag(Enum<?> value) {
+        return value == null ? "INVALID" : value.name();
+    }
+
+    // Reads of a key written here go to the primary for a while, and its cached GET response is dropped
+    private void written(String key) {
+        replicas.written(key);
+        views.evict(key);
+    }
+
+    private void evictConflicting(DataAccessException e, LinkageRequest req) {
+        if (e instanceof ObjectOptimisticLockingFailureException ole && ole.getIdentifier() != null)
+            cache.evictKey(ole.getIdentifier().toString());
+        cache.evictKey(req.getOldAadhaarLinkageKey());
+    }
+
+    // Randomized, growing pause so colliding writers do not retry in lockstep
+    private boolean backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(1, 5L * attempt + 1));
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private PersonIdentity newPerson(String key, HashedIdentity hashed, String gender) {
+        PersonIdentity person = new PersonIdentity();
+        person.setAadhaarLinkageKey(key);
+        person.setHashedForename(hashed.getForename());
+        person.setHashedSecondname(hashed.getSecondname());
+        person.setHashedLastname(hashed.getLastname());
+        person.setHashedDob(hashed.getDob());
+        person.setHashedAadhaarNumber(hashed.getAadhaarNumber());
+        person.setHashedPanNumber(hashed.getPanNumber());
+        person.setHashedDlNumber(hashed.getDlNumber());
+        person.setHashedVoterId(hashed.getVoterId());
+        person.setHashedAddress(hashed.getAddress());
+        person.setIdentityMatchKey(hashed.getMatchKey());
+        person.setGender(gender);
+        return person;
+    }
+
+    // Drops the identity data of a record an UPDATE replaced without deleting it
+    private void supersede(PersonIdentity old) {
+        // Releases its cached match key; the stripped record is cached again after the save
+        cache.evict(old);
+        old.setHashedForename(null);
+        old.setHashedSecondname(null);
+        old.setHashedLastname(null);
+        old.setHashedDob(null);
+        old.setHashedAddress(null);
+        old.setIdentityMatchKey(null);
+        old.setGender(null);
+        for (LinkageSource source : LinkageSource.values()) {
+            old.setHashedDocument(source, null);
+        }
+        blocking.remove(old.getAadhaarLinkageKey());
+    }
+
+    // Based on source, set counter = 1 if inserting for first time
+    private void addSource(PersonIdentity person, LinkageSource source, HashedIdentity hashed) {
+        if (person.getCounter(source) == 0) {
+            person.setCounter(source, 1);
+            person.setHashedDocument(source, hashed.document(source));
+        }
+    }
+
+    private static void putPossibleDuplicates(Map<String, Object> summary, List<IdentityBlocking.Candidate> candidates) {
+        if (candidates.isEmpty()) return;
+        summary.put("possibleDuplicates", candidates.stream()
+                .map(c -> Map.of("aadhaarLinkageKey", c.linkageKey(), "score", Math.round(c.score() * 100) / 100.0))
+                .toList());
     }
 
     private Map<String, Object> summary(PersonIdentity p) {
         Map<String, Object> map = new LinkedHashMap<>();
         map.put("aadhaarLinkageKey", p.getAadhaarLinkageKey());
-        map.put("aadhaarCounter", counterLabel(p.getAadhaarCounter()));
-        map.put("panCounter", counterLabel(p.getPanCounter()));
-        map.put("voterIdCounter", counterLabel(p.getVoterIdCounter()));
-        map.put("dlCounter", counterLabel(p.getDlCounter()));
+        for (LinkageSource source : LinkageSource.values()) {
+            map.put(source.counterName(), counterLabel(p.getCounter(source)));
+        }
         return map;
     }
 
     private String counterLabel(int count) {
         return (count <= 0) ? "Data source not available" : String.valueOf(count);
     }
-
-    private String normalize(String s) {
-        return s == null ? null : s.trim().toLowerCase();
-    }
-
-    private String hash(String value) {
-        if (value == null) return null;
-        return Integer.toHexString(value.hashCode());
-    }
 }
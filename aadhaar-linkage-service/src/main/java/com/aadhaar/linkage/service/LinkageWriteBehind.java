@@ -0,0 +1,491 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.util.MappedJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Write-behind mode for INSERT: the request is appended to a local memory-mapped journal ({@link MappedJournal})
+ * and acknowledged, with its linkage key, once the journal is on disk; the row is written later.
+ * <p>
+ * Appends of concurrent requests share one fsync. Every linkage.write-behind.flush-interval the journal is read
+ * from the last flushed offset, its INSERTs are grouped by identity (one read and one row write per person,
+ * however many sources were queued for it) and written with one transaction per shard. The flushed offset is
+ * kept in a checkpoint file; on restart everything after it is replayed. Each shard's transaction also notes the
+ * journal offsets it wrote (write_behind_applied), and a replay skips those. So a crash between commit and
+ * checkpoint, or a flush that failed on a later shard, neither re-adds a source nor emits its event twice.
+ * <p>
+ * An identity whose records still fail after linkage.retry.max-attempts (a constraint violation, or any other
+ * error that is not the database being unreachable) is dead-lettered: its records are appended to the
+ * dead-letter file, one line of journal offset and Base64 record each, and the flush moves past them; readers
+ * waiting for it are released with an error. While the database is unreachable the flush stops and retries.
+ * <p>
+ * Read-your-writes: an UPDATE, DELETE or SEARCH of a key with queued INSERTs first triggers a flush and waits
+ * for it (at most linkage.write-behind.read-timeout). This covers requests served by this node only.
+ * Keys of new people are drawn when the request is accepted; if another node creates the same person before the
+ * flush, the queued INSERT is applied to that record instead and its key is logged as redirected.
+ * Does nothing unless linkage.write-behind.enabled=true.
+ */
+@Component
+public class LinkageWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(LinkageWriteBehind.class);
+
+    private static final String CHECKPOINT = "flushed";
+    private static final String JOURNAL_ID = "journal-id";
+    private static final String DEAD_LETTER = "dead-letter";
+
+    // A journal record being flushed, with its offset
+    private record Queued(long offset, QueuedInsert insert) {}
+
+    // Queued INSERTs of one identity, from acceptance until they are flushed
+    private static final class Pending {
+        final QueuedInsert first;
+        final CompletableFuture<Void> applied = new CompletableFuture<>();
+        long end;       // journal offset after the last queued record
+        int appending;  // appends in progress
+        RuntimeException failure; // set when a group of this identity was dead-lettered
+
+        Pending(QueuedInsert first) {
+            this.first = first;
+        }
+    }
+
+    private static final class Append {
+        final byte[] payload;
+        long end;
+        boolean done;
+        IOException failure;
+
+        Append(byte[] payload) {
+            this.payload = payload;
+        }
+    }
+
+    private final ObjectProvider<LinkageService> linkageService;
+    private final ShardRouter shards;
+    private final MatchKeyFilter matchFilter;
+    private final TransactionTemplate tx;
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final Path dir;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration flushInterval;
+    private final Duration readTimeout;
+    private final MappedJournal journal;
+    private final String journalId;
+    private final ScheduledExecutorService flusher;
+    private final Counter accepted;
+    private final Counter flushed;
+    private final Counter redirected;
+    private final Counter deadLettered;
+
+    private final Map<IdentityHash, Pending> byMatch = new HashMap<>();
+    private final Map<String, Pending> byKey = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Append> appends = new ConcurrentLinkedQueue<>();
+    private final Object journalLock = new Object();
+    private volatile long flushedOffset;
+    private long checkpointOffset; // last offset actually saved in the checkpoint file
+
+    public LinkageWriteBehind(ObjectProvider<LinkageService> linkageService, ShardRouter shards,
+                              MatchKeyFilter matchFilter, PlatformTransactionManager txManager,
+                              JdbcTemplate jdbc, MeterRegistry meterRegistry,
+                              @Value("${linkage.write-behind.enabled:false}") boolean enabled,
+                              @Value("${linkage.write-behind.dir:./data/write-behind}") Path dir,
+                              @Value("${linkage.write-behind.segment-size:16MB}") DataSize segmentSize,
+                              @Value("${linkage.write-behind.batch-size:500}") int batchSize,
+                              @Value("${linkage.write-behind.flush-interval:50ms}") Duration flushInterval,
+                              @Value("${linkage.write-behind.read-timeout:5s}") Duration readTimeout,
+                              @Value("${linkage.retry.max-attempts:5}") int maxAttempts) throws IOException {
+        this.linkageService = linkageService;
+        this.shards = shards;
+        this.matchFilter = matchFilter;
+        this.tx = new TransactionTemplate(txManager);
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.dir = dir;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.flushInterval = flushInterval;
+        this.readTimeout = readTimeout;
+        this.accepted = Counter.builder("linkage.write-behind.queued")
+                .description("INSERTs acknowledged from the write-behind journal")
+                .register(meterRegistry);
+        this.flushed = Counter.builder("linkage.write-behind.flushed")
+                .description("Queued INSERTs written to the database")
+                .register(meterRegistry);
+        this.redirected = Counter.builder("linkage.write-behind.redirected")
+                .description("Queued INSERTs applied to a record created elsewhere under another key")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("linkage.write-behind.dead-lettered")
+                .description("Queued INSERTs that kept failing and were moved to the dead-letter file")
+                .register(meterRegistry);
+        if (!enabled) {
+            this.journal = null;
+            this.journalId = null;
+            this.flusher = null;
+            return;
+        }
+
+        this.journal = new MappedJournal(dir, Math.toIntExact(segmentSize.toBytes()), 0);
+        this.journalId = readJournalId();
+        this.checkpointOffset = readCheckpoint();
+        this.flushedOffset = Math.max(checkpointOffset, journal.startOffset());
+        replayPending();
+        Gauge.builder("linkage.write-behind.lag", this, w -> w.journal.endOffset() - w.flushedOffset)
+                .description("Bytes of the write-behind journal not yet flushed to the database")
+                .register(meterRegistry);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "linkage-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------- QUEUEING ----------------
+    /**
+     * The first still queued INSERT of this identity, whose key later INSERTs of it must reuse, or {@code null}.
+     */
+    QueuedInsert queued(IdentityHash matchKey) {
+        if (!enabled) return null;
+        synchronized (byMatch) {
+            Pending pending = byMatch.get(matchKey);
+            return pending == null ? null : pending.first;
+        }
+    }
+
+    /**
+     * Appends the INSERT to the journal; it is durable when this returns. Callers hold the identity's lock
+     * stripe, so one identity is never queued under two keys.
+     */
+    void append(QueuedInsert insert) {
+        Pending pending;
+        synchronized (byMatch) {
+            pending = byMatch.computeIfAbsent(insert.matchKey(), m -> new Pending(insert));
+            byKey.put(insert.key(), pending);
+            pending.appending++;
+        }
+        long end = 0;
+        try {
+            end = write(insert.encode());
+            accepted.increment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            synchronized (byMatch) {
+                pending.end = Math.max(pending.end, end);
+                pending.appending--;
+            }
+        }
+    }
+
+    /**
+     * Waits until the queued INSERTs of this key, if any, are in the database.
+     *
+     * @return false if they were not flushed within linkage.write-behind.read-timeout, or were dead-lettered
+     */
+    public boolean awaitFlushed(String key) {
+        if (!enabled || key == null) return true;
+        Pending pending = byKey.get(key);
+        if (pending == null) return true;
+        try {
+            flusher.execute(this::flushQuietly);
+            pending.applied.get(readTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException | RejectedExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // ---------------- FLUSHING ----------------
+    /**
+     * Writes everything queued so far to the database.
+     *
+     * @return number of journal records flushed
+     */
+    public synchronized int flush() {
+        if (!enabled) return 0;
+        int total = 0;
+        List<MappedJournal.Entry> entries;
+        while (!(entries = journal.read(flushedOffset, batchSize)).isEmpty()) {
+            Map<Integer, Map<IdentityHash, List<Queued>>> byShard = new TreeMap<>();
+            for (MappedJournal.Entry entry : entries) {
+                QueuedInsert insert = QueuedInsert.decode(entry.payload());
+                byShard.computeIfAbsent(shards.shardForKey(insert.key()), s -> new LinkedHashMap<>())
+                        .computeIfAbsent(insert.matchKey(), m -> new ArrayList<>()).add(new Queued(entry.offset(), insert));
+            }
+            byShard.forEach((shard, groups) -> shards.callOn(shard, () -> {
+                applyChunk(groups.values());
+                return null;
+            }));
+            flushedOffset = entries.get(entries.size() - 1).nextOffset();
+            writeCheckpoint(flushedOffset);
+            flushed.increment(entries.size());
+            total += entries.size();
+        }
+        release();
+        return total;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (flusher == null) return;
+        long periodMillis = Math.max(1, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flusher == null) return;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Final write-behind flush failed; queued INSERTs are replayed on restart: {}", e.getClass().getName());
+        }
+        journal.close();
+    }
+
+    // ---------------- HELPERS ----------------
+    // Group commit: whoever takes the lock writes every append queued so far, with one fsync
+    private long write(byte[] payload) throws IOException {
+        Append mine = new Append(payload);
+        appends.add(mine);
+        synchronized (journalLock) {
+            if (!mine.done) {
+                List<Append> batch = new ArrayList<>();
+                for (Append a; (a = appends.poll()) != null; ) batch.add(a);
+                try {
+                    long end = journal.append(batch.stream().map(a -> a.payload).toList());
+                    batch.forEach(a -> a.end = end);
+                } catch (IOException e) {
+                    batch.forEach(a -> a.failure = e);
+                }
+                batch.forEach(a -> a.done = true);
+            }
+        }
+        if (mine.failure != null) throw mine.failure;
+        return mine.end;
+    }
+
+    // One transaction for the chunk; on a failure each identity is retried in a transaction of its own
+    private void applyChunk(Collection<List<Queued>> groups) {
+        long checkpoint = checkpointOffset;
+        try {
+            tx.executeWithoutResult(status -> {
+                // Below the saved checkpoint nothing is replayed any more
+                jdbc.update("DELETE FROM write_behind_applied WHERE journal_id = ? AND entry_offset < ?",
+                        journalId, checkpoint);
+                applyOnce(groups);
+            });
+        } catch (RuntimeException e) {
+            if (unavailable(e)) throw e;
+            for (List<Queued> group : groups) {
+                applyWithRetry(group);
+            }
+        }
+    }
+
+    private void applyWithRetry(List<Queued> group) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                tx.executeWithoutResult(status -> applyOnce(List.of(group)));
+                return;
+            } catch (RuntimeException e) {
+                if (unavailable(e)) throw e;
+                // Another node may have created this person: the retry must look it up
+                if (e instanceof OptimisticLockingFailureException || e instanceof DataIntegrityViolationException)
+                    matchFilter.add(group.get(0).insert().matchKey());
+                if (attempt >= maxAttempts) {
+                    deadLetter(group, e);
+                    return;
+                }
+            }
+        }
+    }
+
+    // The database, not the records, is at fault: the flush stops here and the next one starts over
+    private static boolean unavailable(RuntimeException e) {
+        return e instanceof DataAccessResourceFailureException || e instanceof RecoverableDataAccessException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    // Moves a group that keeps failing out of the way, so the records behind it are still written
+    private void deadLetter(List<Queued> group, RuntimeException cause) {
+        StringBuilder lines = new StringBuilder();
+        for (Queued q : group) {
+            lines.append(q.offset()).append('\t')
+                    .append(Base64.getEncoder().encodeToString(q.insert().encode())).append('\n');
+        }
+        try (FileChannel out = FileChannel.open(dir.resolve(DEAD_LETTER),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            out.write(ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.US_ASCII)));
+            out.force(true);
+        } catch (IOException e) {
+            // Not saved anywhere: the flush must not move past it
+            throw new UncheckedIOException(e);
+        }
+        synchronized (byMatch) {
+            Pending pending = byMatch.get(group.get(0).insert().matchKey());
+            if (pending != null) pending.failure = cause;
+        }
+        deadLettered.increment(group.size());
+        log.error("Queued INSERT for key {} failed {} times and was dead-lettered ({} records, first at offset {}): {}",
+                group.get(0).insert().key(), maxAttempts, group.size(), group.get(0).offset(), cause.getClass().getName());
+    }
+
+    // Applies the records this shard has not applied yet, and notes them as applied in the same transaction
+    private void applyOnce(Collection<List<Queued>> groups) {
+        long from = Long.MAX_VALUE, to = Long.MIN_VALUE;
+        for (List<Queued> group : groups) {
+            for (Queued q : group) {
+                from = Math.min(from, q.offset());
+                to = Math.max(to, q.offset());
+            }
+        }
+        Set<Long> applied = new HashSet<>(jdbc.queryForList("SELECT entry_offset FROM write_behind_applied "
+                + "WHERE journal_id = ? AND entry_offset BETWEEN ? AND ?", Long.class, journalId, from, to));
+        List<Object[]> marks = new ArrayList<>();
+        for (List<Queued> group : groups) {
+            List<QueuedInsert> pending = new ArrayList<>(group.size());
+            for (Queued q : group) {
+                if (applied.contains(q.offset())) continue;
+                pending.add(q.insert());
+                marks.add(new Object[]{journalId, q.offset()});
+            }
+            if (!pending.isEmpty()) apply(pending);
+        }
+        if (!marks.isEmpty())
+            jdbc.batchUpdate("INSERT INTO write_behind_applied (journal_id, entry_offset) VALUES (?, ?)", marks);
+    }
+
+    private void apply(List<QueuedInsert> group) {
+        String key = linkageService.getObject().applyQueued(group);
+        if (!key.equals(group.get(0).key())) {
+            redirected.increment();
+            log.warn("Queued INSERT for key {} applied to existing record {}", group.get(0).key(), key);
+        }
+    }
+
+    // Drops the identities whose queued records are all flushed and wakes up their readers
+    private void release() {
+        List<Pending> done = new ArrayList<>();
+        synchronized (byMatch) {
+            Iterator<Pending> it = byMatch.values().iterator();
+            while (it.hasNext()) {
+                Pending pending = it.next();
+                if (pending.appending == 0 && pending.end <= flushedOffset) {
+                    it.remove();
+                    byKey.remove(pending.first.key(), pending);
+                    done.add(pending);
+                }
+            }
+        }
+        for (Pending pending : done) {
+            if (pending.failure == null) pending.applied.complete(null);
+            else pending.applied.completeExceptionally(pending.failure);
+        }
+    }
+
+    // Queued records left over from the last run are pending again until the first flush
+    private void replayPending() {
+        long offset = flushedOffset;
+        List<MappedJournal.Entry> entries;
+        int count = 0;
+        while (!(entries = journal.read(offset, batchSize)).isEmpty()) {
+            for (MappedJournal.Entry entry : entries) {
+                QueuedInsert insert = QueuedInsert.decode(entry.payload());
+                Pending pending = byMatch.computeIfAbsent(insert.matchKey(), m -> new Pending(insert));
+                byKey.put(insert.key(), pending);
+                pending.end = entry.nextOffset();
+                count++;
+            }
+            offset = entries.get(entries.size() - 1).nextOffset();
+        }
+        if (count > 0) log.info("Replaying {} queued INSERTs from the write-behind journal", count);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Write-behind flush failed, retrying next interval: {}", e.getClass().getName());
+        }
+    }
+
+    // Names this journal in write_behind_applied; offsets alone repeat across nodes
+    private String readJournalId() throws IOException {
+        Path file = dir.resolve(JOURNAL_ID);
+        if (Files.isRegularFile(file)) return Files.readString(file).trim();
+        String id = UUID.randomUUID().toString();
+        Path tmp = dir.resolve(JOURNAL_ID + ".tmp");
+        Files.writeString(tmp, id);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        return id;
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path file = dir.resolve(CHECKPOINT);
+        if (!Files.isRegularFile(file)) return 0;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readLong();
+        }
+    }
+
+    // Written to a temporary file first, so a crash never leaves a torn checkpoint behind
+    private void writeCheckpoint(long offset) {
+        try {
+            Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                out.writeLong(offset);
+            }
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpointOffset = offset;
+            journal.deleteBefore(offset);
+        } catch (IOException e) {
+            log.warn("Could not save write-behind checkpoint in {}: {}", dir, e.toString());
+        }
+    }
+}
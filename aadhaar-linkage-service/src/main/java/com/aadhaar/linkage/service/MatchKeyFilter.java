@@ -0,0 +1,262 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bloom filter over the identity-match keys in person_identity, so that an INSERT of a person who is definitely
+ * new skips the existence query and goes straight to the write.
+ * <p>
+ * The filter is saved to linkage.match-filter.snapshot on shutdown and after every rebuild. At startup the
+ * snapshot is loaded and topped up with the match keys of records updated since it was written (less
+ * linkage.match-filter.catch-up-margin), so a restart does not rescan the table; without a usable snapshot, or
+ * once the filter is fuller than its false-positive rate allows, it is rebuilt from the table. It is also rebuilt
+ * every linkage.match-filter.rebuild-interval, which drops keys that no longer exist. Until the filter is loaded
+ * every INSERT queries as before.
+ * <p>
+ * A key this node has not seen (written by another node since the last rebuild) is answered "absent"; the INSERT
+ * then hits uk_person_identity_match, the key is added here, and the retry finds the existing record. That key
+ * is unique per shard only, so with sharded storage a person living away from the home shard is found through
+ * the home shard's pointer ({@link MatchPointers}), which is always read; the filter is then told the key.
+ * Does nothing unless linkage.match-filter.enabled=true.
+ */
+@Component
+public class MatchKeyFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(MatchKeyFilter.class);
+
+    private static final int MAGIC = 0x4c4d4631; // "LMF1"
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final Path snapshot;
+    private final Duration rebuildInterval;
+    private final Duration catchUpMargin;
+    private final Counter absent;
+    private final Counter found;
+    private final Counter falsePositives;
+    private final ScheduledExecutorService rebuilder;
+
+    // null until loaded
+    private volatile BloomFilter filter;
+    // Filter of a rebuild or catch-up in progress, which also receives every key committed meanwhile
+    private volatile BloomFilter building;
+
+    public MatchKeyFilter(DataSource dataSource, ShardRouter shards, MeterRegistry meterRegistry,
+                          @Value("${linkage.match-filter.enabled:false}") boolean enabled,
+                          @Value("${linkage.match-filter.expected-insertions:10000000}") long expectedInsertions,
+                          @Value("${linkage.match-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                          @Value("${linkage.match-filter.snapshot:./data/match-filter.bin}") Path snapshot,
+                          @Value("${linkage.match-filter.rebuild-interval:24h}") Duration rebuildInterval,
+                          @Value("${linkage.match-filter.catch-up-margin:1m}") Duration catchUpMargin) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.jdbc.setFetchSize(1000);
+        this.shards = shards;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.snapshot = snapshot;
+        this.rebuildInterval = rebuildInterval;
+        this.catchUpMargin = catchUpMargin;
+        // Observed false-positive rate = false_positive / (false_positive + absent)
+        this.absent = checks(meterRegistry, "absent");
+        this.found = checks(meterRegistry, "found");
+        this.falsePositives = checks(meterRegistry, "false_positive");
+        Gauge.builder("linkage.match-filter.expected-fpp", this, f -> f.filter == null ? Double.NaN
+                        : f.filter.expectedFalsePositiveRate())
+                .description("False-positive rate the match-key filter should show at its current fill")
+                .register(meterRegistry);
+        Gauge.builder("linkage.match-filter.insertions", this, f -> f.filter == null ? 0 : f.filter.insertions())
+                .description("Keys added to the match-key filter since it was built")
+                .register(meterRegistry);
+        this.rebuilder = !enabled ? null : Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "match-filter-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ---------------- CHECKS ----------------
+    /**
+     * {@code false} only if no record has this identity-match key; always {@code true} while not loaded.
+     */
+    public boolean mightExist(IdentityHash matchKey) {
+        BloomFilter current = filter;
+        return current == null || matchKey == null || current.mightContain(matchKey.toBytes());
+    }
+
+    /**
+     * Counts the outcome of an INSERT existence check: skipped ({@code checked == false}), or queried and found.
+     */
+    public void recordCheck(boolean checked, boolean exists) {
+        if (filter == null) return;
+        (!checked ? absent : exists ? found : falsePositives).increment();
+    }
+
+    /**
+     * Adds the match key of a saved record.
+     */
+    public void add(IdentityHash matchKey) {
+        if (!enabled || matchKey == null) return;
+        byte[] digest = matchKey.toBytes();
+        BloomFilter current = filter;
+        // Right away, so the next INSERT of this person on this node queries
+        if (current != null) current.put(digest);
+        // Once committed, so that a rebuild that started before this write cannot lose it
+        afterCommit(() -> {
+            BloomFilter next = building;
+            if (next != null) next.put(digest);
+        });
+    }
+
+    // ---------------- LOADING ----------------
+    /**
+     * Rebuilds the filter from the table, swaps it in and saves a snapshot.
+     */
+    public synchronized void rebuild() {
+        long rows = 0;
+        for (long count : shards.onAllShards(shard ->
+                jdbc.queryForObject("SELECT COUNT(*) FROM person_identity", Long.class))) {
+            rows += count;
+        }
+        long started = System.currentTimeMillis();
+        BloomFilter next = new BloomFilter(Math.max(expectedInsertions, 2 * rows), falsePositiveRate);
+        fill(next, "SELECT identity_match_key FROM person_identity WHERE identity_match_key IS NOT NULL");
+        log.info("Match-key filter rebuilt from {} records ({} bits)", rows, next.bitCount());
+        save(next, started);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (rebuilder == null) return;
+        rebuilder.execute(() -> {
+            try {
+                if (!restore()) rebuild();
+            } catch (RuntimeException e) {
+                log.warn("Match-key filter not loaded, INSERTs keep querying: {}", e.getClass().getName());
+            }
+        });
+        long periodMillis = Math.max(1, rebuildInterval.toMillis());
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rebuilder == null) return;
+        rebuilder.shutdownNow();
+        BloomFilter current = filter;
+        if (current != null) save(current, System.currentTimeMillis());
+    }
+
+    // ---------------- HELPERS ----------------
+    // Snapshot plus the records updated since it was written; false if there is no usable snapshot
+    synchronized boolean restore() {
+        if (!Files.isRegularFile(snapshot)) return false;
+        BloomFilter restored;
+        long savedAt;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+            if (in.readInt() != MAGIC) throw new IOException("not a match-key filter snapshot");
+            savedAt = in.readLong();
+            restored = BloomFilter.readFrom(in);
+        } catch (IOException e) {
+            log.warn("Ignoring match-key filter snapshot {}: {}", snapshot, e.toString());
+            return false;
+        }
+        Timestamp since = new Timestamp(savedAt - catchUpMargin.toMillis());
+        fill(restored, "SELECT identity_match_key FROM person_identity "
+                + "WHERE identity_match_key IS NOT NULL AND updated_at >= ?", since);
+        log.info("Match-key filter restored from {} and caught up from {}", snapshot, since);
+        if (restored.expectedFalsePositiveRate() > 2 * falsePositiveRate) {
+            log.info("Match-key filter is over capacity ({} keys), rebuilding", restored.insertions());
+            return false;
+        }
+        return true;
+    }
+
+    private void fill(BloomFilter next, String sql, Object... args) {
+        building = next;
+        try {
+            shards.onAllShards(shard -> {
+                jdbc.query(sql, rs -> {
+                    next.put(rs.getBytes(1));
+                }, args);
+                return null;
+            });
+            filter = next;
+        } finally {
+            building = null;
+        }
+    }
+
+    // Written to a temporary file first, so a crash never leaves a torn snapshot behind
+    private void save(BloomFilter current, long savedAt) {
+        try {
+            Path parent = snapshot.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            Path tmp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(savedAt);
+                current.writeTo(out);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not save match-key filter snapshot {}: {}", snapshot, e.toString());
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Match-key filter rebuild failed, keeping the previous filter: {}", e.getClass().getName());
+        }
+    }
+
+    private static Counter checks(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("linkage.match-filter.checks")
+                .description("INSERT existence checks answered with the match-key filter")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where an identity lives when that is not its home shard ({@link ShardRouter#shardForMatch}): a row in
+ * person_match_pointer on the home shard, from the identity-match key to a linkage key on the shard that holds
+ * the record (its own key, or the key of the record it replaced). An INSERT thus finds any existing person with
+ * one lookup on the home shard, and a new person created there stays covered by the same pointer.
+ * <p>
+ * Records land away from their home shard when an UPDATE changes a person's details (the new record stays on
+ * the old one's shard) or when a rebalance changed the shard count. The UPDATE places the pointer before its
+ * transaction starts, so a record never exists without one; a pointer whose record was rolled back or deleted
+ * later only sends the next INSERT of that person to the pointed-at shard, where it is created. The
+ * identity-match key is unique on each shard only, so a record is not placed away from home while the home
+ * shard, or the shard its pointer names, has a record with that key. Within one node the identity's lock stripe
+ * ({@link IdentityLocks}) keeps INSERT and UPDATE from racing past that check.
+ * Unused without sharding.
+ */
+@Component
+public class MatchPointers {
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+
+    public MatchPointers(DataSource dataSource, ShardRouter shards) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.shards = shards;
+    }
+
+    /**
+     * Linkage key the identity was placed under, read on the current shard (the identity's home shard).
+     */
+    public Optional<String> find(IdentityHash matchKey) {
+        List<String> keys = jdbc.queryForList(
+                "SELECT aadhaar_linkage_key FROM person_match_pointer WHERE identity_match_key = ?",
+                String.class, (Object) matchKey.toBytes());
+        return keys.stream().findFirst();
+    }
+
+    /**
+     * Points the identity's home shard at the shard of {@code recordKey}, where a record with this identity is
+     * about to be written, unless that is the home shard itself. Each shard is asked in a statement of its own,
+     * so no connection is held while another shard's is awaited; callers must not have a transaction open.
+     *
+     * @return false if another shard already holds a record with this identity
+     */
+    public boolean place(IdentityHash matchKey, String recordKey) {
+        if (!shards.isSharded() || matchKey == null) return true;
+        int shard = shards.shardForKey(recordKey);
+        int home = shards.shardForMatch(matchKey);
+        if (home == shard) return true;
+        if (TransactionSynchronizationManager.isActualTransactionActive())
+            throw new IllegalStateException("Identities are placed before the transaction starts");
+
+        byte[] match = matchKey.toBytes();
+        if (shards.callOn(home, () -> holds(match))) return false;
+        Optional<String> pointed = shards.callOn(home, () -> find(matchKey));
+        if (pointed.isEmpty()) {
+            try {
+                shards.callOn(home, () -> jdbc.update(
+                        "INSERT INTO person_match_pointer (identity_match_key, aadhaar_linkage_key) VALUES (?, ?)",
+                        match, recordKey));
+                return true;
+            } catch (DuplicateKeyException e) {
+                // Another node placed the same identity at the same time
+                return false;
+            }
+        }
+        int pointedShard = shards.shardForKey(pointed.get());
+        if (pointedShard == shard) return true;
+        if (shards.callOn(pointedShard, () -> holds(match))) return false;
+        shards.callOn(home, () -> jdbc.update(
+                "UPDATE person_match_pointer SET aadhaar_linkage_key = ? WHERE identity_match_key = ?",
+                recordKey, match));
+        return true;
+    }
+
+    // ---------------- HELPERS ----------------
+    // Whether a record on the current shard has the identity
+    private boolean holds(byte[] match) {
+        Integer rows = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM person_identity WHERE identity_match_key = ?", Integer.class, (Object) match);
+        return rows != null && rows > 0;
+    }
+}
@@ -0,0 +1,135 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Serialized SEARCH responses for GET /api/v1/person/{key}, with their ETag, so a repeated lookup skips loading
+ * the record and writing the JSON.
+ * <p>
+ * The ETag is the record's version, which every write to the record increments. Writes on this node, and INSERTs
+ * queued for write-behind, evict the key (again once their transaction commits); changes made by other nodes show
+ * up after linkage.view-cache.ttl at the latest, as with {@link IdentityCache}.
+ * <p>
+ * A lookup takes the key's {@link #generation} before it reads and hands it to {@link #put}, which drops the view
+ * if the key was evicted in between, so a read that raced a write is never cached. Generations are striped like
+ * {@link IdentityLocks}: an eviction of another key on the same stripe only costs a cache miss.
+ */
+@Component
+public class PersonViewCache {
+
+    private static final int STRIPES = 1024;
+
+    /**
+     * A successful SEARCH response as sent: the JSON bytes and the quoted ETag.
+     */
+    public record View(String etag, byte[] body) {
+
+        /**
+         * Whether an If-None-Match header names this view (or is {@code *}).
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) return false;
+            for (String tag : ifNoneMatch.split(",")) {
+                String t = tag.trim();
+                // Weak comparison, as If-None-Match requires
+                if (t.startsWith("W/")) t = t.substring(2);
+                if (t.equals("*") || t.equals(etag)) return true;
+            }
+            return false;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Cache<String, View> views;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    public PersonViewCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                           @Value("${linkage.view-cache.enabled:true}") boolean enabled,
+                           @Value("${linkage.view-cache.maximum-size:100000}") long maximumSize,
+                           @Value("${linkage.view-cache.ttl:1m}") Duration ttl) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.views = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // cache.size / cache.gets{result=hit|miss} / cache.evictions, tagged cache=person.view
+        CaffeineCacheMetrics.monitor(meterRegistry, views, "person.view");
+    }
+
+    public View get(String key) {
+        return enabled ? views.getIfPresent(key) : null;
+    }
+
+    /**
+     * Taken before reading the record whose view is then {@link #put}.
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * Serializes a successful SEARCH response for {@code key} and caches it, unless the key was evicted since
+     * {@code generation} was taken.
+     */
+    public View put(String key, long generation, LinkageResponse response) {
+        Object version = response.getData() instanceof Map<?, ?> summary ? summary.get("version") : null;
+        View view;
+        try {
+            view = new View("\"" + version + "\"", objectMapper.writeValueAsBytes(response));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize SEARCH response", e);
+        }
+        int stripe = stripe(key);
+        if (enabled && version != null && generations.get(stripe) == generation) {
+            views.put(key, view);
+            // An eviction between the check and the put has moved the generation on: take the view out again
+            if (generations.get(stripe) != generation) views.invalidate(key);
+        }
+        return view;
+    }
+
+    /**
+     * Drops the view of a key that is being written, now and again after the write commits.
+     */
+    public void evict(String key) {
+        if (!enabled || key == null) return;
+        invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(key);
+                }
+            });
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+    // Generation first, so a put that passed its check before this is undone by the invalidate
+    private void invalidate(String key) {
+        generations.incrementAndGet(stripe(key));
+        views.invalidate(key);
+    }
+
+    private static int stripe(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+}
@@ -0,0 +1,105 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.IdentityHash;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An acknowledged INSERT waiting in the write-behind journal ({@link LinkageWriteBehind}).
+ * <p>
+ * Holds only what the write needs, all of it hashed: the request's PII never reaches the journal file.
+ *
+ * @param key      linkage key returned to the caller
+ * @param existing whether {@code key} was an existing record when the request was accepted
+ * @param tokens   blocking tokens for a new record, or {@code null}
+ */
+record QueuedInsert(String key, boolean existing, LinkageSource source, HashedIdentity hashed, String gender,
+                    IdentityBlocking.Tokens tokens) {
+
+    // 2: source by name, so reordering LinkageSource cannot change queued entries; 1 wrote its ordinal
+    private static final byte VERSION = 2;
+
+    IdentityHash matchKey() {
+        return hashed.getMatchKey();
+    }
+
+    // ---------------- JOURNAL FORMAT ----------------
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(key);
+            out.writeBoolean(existing);
+            out.writeUTF(source.name());
+            for (IdentityHash h : new IdentityHash[]{hashed.getAadhaarNumber(), hashed.getPanNumber(),
+                    hashed.getVoterId(), hashed.getDlNumber(), hashed.getForename(), hashed.getSecondname(),
+                    hashed.getLastname(), hashed.getDob(), hashed.getAddress()}) {
+                writeHash(out, h);
+            }
+            out.writeBoolean(gender != null);
+            if (gender != null) out.writeUTF(gender);
+            if (tokens == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(tokens.phonetic().size());
+                for (IdentityHash t : tokens.phonetic()) out.write(t.toBytes());
+                List<IdentityHash> others = new ArrayList<>(tokens.all());
+                others.removeAll(tokens.phonetic());
+                out.writeInt(others.size());
+                for (IdentityHash t : others) out.write(t.toBytes());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static QueuedInsert decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte version = in.readByte();
+            if (version != 1 && version != VERSION) throw new IOException("unknown queued insert version");
+            String key = in.readUTF();
+            boolean existing = in.readBoolean();
+            LinkageSource source = version == 1 ? LinkageSource.values()[in.readByte()] : LinkageSource.valueOf(in.readUTF());
+            IdentityHash[] hashes = new IdentityHash[9];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = readHash(in);
+            }
+            String gender = in.readBoolean() ? in.readUTF() : null;
+            IdentityBlocking.Tokens tokens = null;
+            int phoneticCount = in.readInt();
+            if (phoneticCount >= 0) {
+                List<IdentityHash> phonetic = new ArrayList<>(phoneticCount);
+                for (int i = 0; i < phoneticCount; i++) phonetic.add(readHash(in, true));
+                Set<IdentityHash> all = new HashSet<>(phonetic);
+                for (int i = in.readInt(); i > 0; i--) all.add(readHash(in, true));
+                tokens = new IdentityBlocking.Tokens(phonetic, all);
+            }
+            return new QueuedInsert(key, existing, source, new HashedIdentity(hashes), gender, tokens);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------------- HELPERS ----------------
+    private static void writeHash(DataOutputStream out, IdentityHash h) throws IOException {
+        out.writeBoolean(h != null);
+        if (h != null) out.write(h.toBytes());
+    }
+
+    private static IdentityHash readHash(DataInputStream in) throws IOException {
+        return readHash(in, in.readBoolean());
+    }
+
+    private static IdentityHash readHash(DataInputStream in, boolean present) throws IOException {
+        if (!present) return null;
+        byte[] digest = new byte[IdentityHash.LENGTH];
+        in.readFully(digest);
+        return IdentityHash.wrap(digest);
+    }
+}
@@ -0,0 +1,220 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.SourceCounters;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk export of person_identity for downstream analytics, without copying the database file.
+ * <p>
+ * The table is walked in linkage-key order with keyset pagination: each page is one forward-only query for the
+ * next linkage.export.page-size keys after the last one written, so memory stays constant and no cursor or
+ * transaction is held open for the whole export. With sharded storage the shards are exported one after another,
+ * each in key order.
+ * <p>
+ * Incremental exports select rows by updated_at: an export covers changes up to its watermark, and the next one
+ * passes that watermark as {@code since}. The watermark trails the clock by linkage.export.watermark-lag so that
+ * transactions still in flight are picked up next time; delivery is at-least-once. Deleted records are not
+ * visible to incremental exports.
+ */
+@Service
+public class RecordExportService {
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Optional<Format> parse(String name) {
+            for (Format f : values()) {
+                if (f.name().equalsIgnoreCase(name)) return Optional.of(f);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static final String[] COLUMNS = {
+            "aadhaar_linkage_key", "hashed_aadhaar_number", "hashed_pan_number", "hashed_voter_id", "hashed_dl_number",
+            "hashed_forename", "hashed_secondname", "hashed_lastname", "hashed_dob", "hashed_address",
+            "identity_match_key", "gender", "aadhaar_counter", "pan_counter", "voter_id_counter", "dl_counter",
+            "created_at", "updated_at", "version"
+    };
+
+    // Export column of each source's counter, indexed by LinkageSource.ordinal()
+    private static final String[] COUNTER_COLUMNS = {"aadhaar_counter", "pan_counter", "voter_id_counter", "dl_counter"};
+
+    // The per-source counters are unpacked from source_counters, so the export keeps one column per source
+    private static final String SELECT = "SELECT " + Arrays.stream(COLUMNS).map(RecordExportService::expression)
+            .collect(Collectors.joining(", ")) + " FROM person_identity WHERE aadhaar_linkage_key > ?";
+
+    private final JdbcTemplate jdbc;
+    private final ShardRouter shards;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+    private final Duration watermarkLag;
+
+    public RecordExportService(DataSource dataSource, ShardRouter shards, ObjectMapper objectMapper,
+                               @Value("${linkage.export.page-size:1000}") int pageSize,
+                               @Value("${linkage.export.watermark-lag:30s}") Duration watermarkLag) {
+        this.shards = shards;
+        this.objectMapper = objectMapper;
+        this.pageSize = Math.max(1, pageSize);
+        this.watermarkLag = watermarkLag;
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.jdbc.setFetchSize(this.pageSize);
+    }
+
+    /**
+     * Upper bound for an export starting now; pass it to {@link #export} and hand it back as the next {@code since}.
+     */
+    public LocalDateTime watermark() {
+        return LocalDateTime.now().minus(watermarkLag);
+    }
+
+    /**
+     * Writes every record, or with {@code since} only those updated in (since, upTo], to the stream.
+     * The stream is flushed after each page but not closed.
+     *
+     * @return number of records written
+     */
+    public long export(Format format, LocalDateTime since, LocalDateTime upTo, OutputStream out) throws IOException {
+        RecordWriter writer = format == Format.CSV ? new CsvWriter(out) : new NdjsonWriter(out);
+        String sql = SELECT + (since == null ? "" : " AND updated_at > ? AND updated_at <= ?")
+                + " ORDER BY aadhaar_linkage_key LIMIT " + pageSize;
+        long written = 0;
+        writer.begin();
+        for (int shard = 0; shard < shards.count(); shard++) {
+            written += shards.callOn(shard, () -> exportShard(sql, since, upTo, writer));
+        }
+        writer.flush();
+        return written;
+    }
+
+    // ---------------- HELPERS ----------------
+    private long exportShard(String sql, LocalDateTime since, LocalDateTime upTo, RecordWriter writer) {
+        long written = 0;
+        String after = "";
+        while (true) {
+            Object[] args = since == null
+                    ? new Object[]{after}
+                    : new Object[]{after, Timestamp.valueOf(since), Timestamp.valueOf(upTo)};
+            String[] last = new String[1];
+            int[] rows = new int[1];
+            jdbc.query(sql, rs -> {
+                try {
+                    writer.write(rs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                last[0] = rs.getString(1);
+                rows[0]++;
+            }, args);
+            written += rows[0];
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (rows[0] < pageSize) return written;
+            after = last[0];
+        }
+    }
+
+    private static String expression(String column) {
+        for (LinkageSource source : LinkageSource.values()) {
+            if (column.equals(COUNTER_COLUMNS[source.ordinal()]))
+                return SourceCounters.sql(source.ordinal()) + " AS " + column;
+        }
+        return column;
+    }
+
+    private static Object value(ResultSet rs, int column) throws SQLException {
+        Object value = rs.getObject(column);
+        if (value instanceof byte[] bytes) return HexFormat.of().formatHex(bytes);
+        if (value instanceof Timestamp ts) return ts.toLocalDateTime().toString();
+        return value;
+    }
+
+    private interface RecordWriter {
+        default void begin() throws IOException {}
+
+        void write(ResultSet rs) throws SQLException, IOException;
+
+        void flush() throws IOException;
+    }
+
+    // One JSON object per line, hashes as lower-case hex
+    private class NdjsonWriter implements RecordWriter {
+        private final JsonGenerator json;
+
+        NdjsonWriter(OutputStream out) throws IOException {
+            this.json = objectMapper.getFactory().createGenerator(out);
+            this.json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            this.json.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            json.writeStartObject();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                json.writeObjectField(COLUMNS[i], value(rs, i + 1));
+            }
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            json.flush();
+        }
+    }
+
+    // RFC 4180: header row, fields quoted only when they need it
+    private static class CsvWriter implements RecordWriter {
+        private final Writer out;
+
+        CsvWriter(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write(String.join(",", COLUMNS));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void write(ResultSet rs) throws SQLException, IOException {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) out.write(',');
+                Object value = value(rs, i + 1);
+                if (value != null) out.write(escape(value.toString()));
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private static String escape(String field) {
+            if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0)
+                return field;
+            return '"' + field.replace("\"", "\"\"") + '"';
+        }
+    }
+}
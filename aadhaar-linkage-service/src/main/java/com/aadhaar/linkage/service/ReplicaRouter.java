@@ -0,0 +1,118 @@
+package com.aadhaar.linkage.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Says whether the calling thread reads from the read replica (linkage.replica.*);
+ * {@code ReplicaRoutingDataSource} hands out connections accordingly.
+ * <p>
+ * The replica trails the primary by up to linkage.replica.max-lag. Keys this node wrote within that window are
+ * therefore read from the primary, so a client always sees its own writes here. Keys written by other nodes
+ * can be read stale for up to max-lag, as with any replica. With the replica disabled every call is a no-op.
+ */
+@Component
+public class ReplicaRouter {
+
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final Cache<String, Boolean> recentWrites;
+    private final Counter replicaReads;
+    private final Counter recentReads;
+    private final Counter fallbackReads;
+
+    public ReplicaRouter(MeterRegistry meterRegistry,
+                         @Value("${linkage.replica.enabled:false}") boolean enabled,
+                         @Value("${linkage.replica.max-lag:5s}") Duration maxLag,
+                         @Value("${linkage.replica.recent-writes:100000}") long recentWrites) {
+        this.enabled = enabled;
+        this.recentWrites = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, recentWrites))
+                .expireAfterWrite(maxLag)
+                .build();
+        // linkage.replica.reads{target=replica|primary_recent_write|primary_fallback}
+        this.replicaReads = reads(meterRegistry, "replica");
+        this.recentReads = reads(meterRegistry, "primary_recent_write");
+        this.fallbackReads = reads(meterRegistry, "primary_fallback");
+    }
+
+    /**
+     * Whether the calling thread is inside {@link #callOnReplica}.
+     */
+    public static boolean onReplica() {
+        return Boolean.TRUE.equals(REPLICA.get());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ---------------- ROUTING ----------------
+    /**
+     * Whether a read of {@code key} may go to the replica: not when this node wrote the key within max-lag.
+     */
+    public boolean mayRead(String key) {
+        if (!enabled || key == null) return false;
+        if (recentWrites.getIfPresent(key) == null) return true;
+        recentReads.increment();
+        return false;
+    }
+
+    /**
+     * Notes a write of {@code key}, now and again when its transaction commits, since the replica lags the commit.
+     */
+    public void written(String key) {
+        if (!enabled || key == null) return;
+        recentWrites.put(key, Boolean.TRUE);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recentWrites.put(key, Boolean.TRUE);
+                }
+            });
+        }
+    }
+
+    // ---------------- EXECUTION ----------------
+    /**
+     * Runs the work with the calling thread bound to the replica. Transactions must start inside it, and should
+     * be read-only.
+     */
+    public <T> T callOnReplica(Supplier<T> work) {
+        Boolean previous = REPLICA.get();
+        REPLICA.set(Boolean.TRUE);
+        try {
+            replicaReads.increment();
+            return work.get();
+        } finally {
+            if (previous == null) REPLICA.remove();
+            else REPLICA.set(previous);
+        }
+    }
+
+    /**
+     * Counts a replica read that had to be repeated on the primary (a miss, or the replica failing).
+     */
+    public void fellBack() {
+        fallbackReads.increment();
+    }
+
+    // ---------------- HELPERS ----------------
+    private static Counter reads(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("linkage.replica.reads")
+                .description("SEARCH requests by the database they were routed to")
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+}
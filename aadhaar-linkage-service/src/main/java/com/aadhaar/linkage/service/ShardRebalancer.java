@@ -0,0 +1,196 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.config.ShardRoutingDataSource;
+import com.aadhaar.linkage.model.IdentityHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+/**
+ * Moves every record, with its fuzzy-matching tokens and history, to the shard its linkage key routes to,
+ * e.g. after linkage.shards.count changed.
+ * <p>
+ * Each shard is scanned in key order one page at a time. Misplaced rows are copied to their shard first and only
+ * then removed from the old one, so an interrupted run loses nothing and can simply be run again.
+ * A moved row whose identity-match key is already taken on the target shard keeps its data but gives up the
+ * match key, as the older of two records for one person does after an UPDATE.
+ * <p>
+ * Home shards change with the shard count too, so the pointers to identities living away from theirs
+ * ({@link MatchPointers}) are rebuilt from the records afterwards. This also creates them for data written
+ * before sharding was enabled.
+ */
+@Component
+@ConditionalOnProperty(name = "linkage.shards.enabled", havingValue = "true")
+public class ShardRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final List<JdbcTemplate> shards = new ArrayList<>();
+    private final ShardRouter router;
+
+    public ShardRebalancer(ShardRoutingDataSource dataSource, ShardRouter router) {
+        for (DataSource shard : dataSource.shards()) {
+            shards.add(new JdbcTemplate(shard));
+        }
+        this.router = router;
+    }
+
+    /**
+     * @return number of records moved
+     */
+    public long rebalance() {
+        long moved = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            long fromShard = rebalanceShard(shard);
+            log.info("Shard {}: moved {} records", shard, fromShard);
+            moved += fromShard;
+        }
+        log.info("Rebalanced {} shards, moved {} records", shards.size(), moved);
+        long pointers = rebuildPointers();
+        log.info("Rebuilt {} pointers to identities away from their home shard", pointers);
+        return moved;
+    }
+
+    // ---------------- HELPERS ----------------
+    private long rebalanceShard(int shard) {
+        JdbcTemplate source = shards.get(shard);
+        long moved = 0;
+        String after = "";
+        while (true) {
+            List<String> page = source.queryForList(
+                    "SELECT aadhaar_linkage_key FROM person_identity WHERE aadhaar_linkage_key > ? "
+                            + "ORDER BY aadhaar_linkage_key LIMIT " + PAGE_SIZE, String.class, after);
+            if (page.isEmpty()) return moved;
+            after = page.get(page.size() - 1);
+
+            Map<Integer, List<String>> byTarget = new TreeMap<>();
+            for (String key : page) {
+                int target = router.shardForKey(key);
+                if (target != shard) byTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(key);
+            }
+            for (Map.Entry<Integer, List<String>> e : byTarget.entrySet()) {
+                moved += move(source, shards.get(e.getKey()), e.getValue());
+            }
+        }
+    }
+
+    private long rebuildPointers() {
+        for (JdbcTemplate shard : shards) {
+            shard.update("DELETE FROM person_match_pointer");
+        }
+        long pointers = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            String after = "";
+            while (true) {
+                List<Map<String, Object>> page = shards.get(shard).queryForList(
+                        "SELECT aadhaar_linkage_key, identity_match_key FROM person_identity "
+                                + "WHERE aadhaar_linkage_key > ? AND identity_match_key IS NOT NULL "
+                                + "ORDER BY aadhaar_linkage_key LIMIT " + PAGE_SIZE, after);
+                if (page.isEmpty()) break;
+                after = (String) page.get(page.size() - 1).get("aadhaar_linkage_key");
+
+                Map<Integer, List<Object[]>> byHome = new TreeMap<>();
+                for (Map<String, Object> row : page) {
+                    byte[] match = (byte[]) row.get("identity_match_key");
+                    int home = router.shardForMatch(IdentityHash.fromBytes(match));
+                    if (home != shard)
+                        byHome.computeIfAbsent(home, h -> new ArrayList<>())
+                                .add(new Object[]{match, row.get("aadhaar_linkage_key")});
+                }
+                for (Map.Entry<Integer, List<Object[]>> e : byHome.entrySet()) {
+                    pointers += insertPointers(shards.get(e.getKey()), e.getValue());
+                }
+            }
+        }
+        return pointers;
+    }
+
+    private int insertPointers(JdbcTemplate home, List<Object[]> rows) {
+        String insert = "INSERT INTO person_match_pointer (identity_match_key, aadhaar_linkage_key) VALUES (?, ?)";
+        try {
+            home.batchUpdate(insert, rows);
+            return rows.size();
+        } catch (DataIntegrityViolationException e) {
+            int inserted = 0;
+            for (Object[] row : rows) {
+                if (home.queryForObject("SELECT COUNT(*) FROM person_match_pointer WHERE identity_match_key = ?",
+                        Integer.class, row[0]) > 0) {
+                    log.warn("Identity kept by records on two shards; its pointer names only the first");
+                    continue;
+                }
+                home.update(insert, row);
+                inserted++;
+            }
+            return inserted;
+        }
+    }
+
+    private int move(JdbcTemplate source, JdbcTemplate target, List<String> keys) {
+        String in = "aadhaar_linkage_key IN (" + String.join(", ", Collections.nCopies(keys.size(), "?")) + ")";
+        Object[] args = keys.toArray();
+        List<Map<String, Object>> rows = source.queryForList("SELECT * FROM person_identity WHERE " + in, args);
+        if (rows.isEmpty()) return 0;
+
+        // Leftovers of an interrupted run are replaced: the source copy is still the authoritative one
+        target.update("DELETE FROM person_identity WHERE " + in, args);
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String insert = insertSql("person_identity", columns);
+        try {
+            target.batchUpdate(insert, rows.stream().map(row -> values(row, columns)).toList());
+        } catch (DataIntegrityViolationException e) {
+            target.update("DELETE FROM person_identity WHERE " + in, args);
+            for (Map<String, Object> row : rows) {
+                insertReleasingMatchKey(target, insert, row, columns);
+            }
+        }
+        // Fuzzy-matching tokens (IdentityBlocking) and history rows (LinkageHistory) live next to their record
+        moveRows(source, target, "identity_block_token", keys.size(), args);
+        moveRows(source, target, "person_history", keys.size(), args);
+        source.update("DELETE FROM person_identity WHERE " + in, args);
+        return rows.size();
+    }
+
+    // Rows of a table keyed by linkage_key
+    private void moveRows(JdbcTemplate source, JdbcTemplate target, String table, int keys, Object[] args) {
+        String in = "linkage_key IN (" + String.join(", ", Collections.nCopies(keys, "?")) + ")";
+        List<Map<String, Object>> rows = source.queryForList("SELECT * FROM " + table + " WHERE " + in, args);
+        target.update("DELETE FROM " + table + " WHERE " + in, args);
+        if (!rows.isEmpty()) {
+            List<String> columns = new ArrayList<>(rows.get(0).keySet());
+            target.batchUpdate(insertSql(table, columns), rows.stream().map(row -> values(row, columns)).toList());
+        }
+        source.update("DELETE FROM " + table + " WHERE " + in, args);
+    }
+
+    private void insertReleasingMatchKey(JdbcTemplate target, String insert, Map<String, Object> row,
+                                         List<String> columns) {
+        try {
+            target.update(insert, values(row, columns));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Record moved without its identity-match key: the target shard already matches that identity");
+            row.replaceAll((column, value) -> "identity_match_key".equalsIgnoreCase(column) ? null : value);
+            target.update(insert, values(row, columns));
+        }
+    }
+
+    private static String insertSql(String table, Collection<String> columns) {
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+    }
+
+    private static Object[] values(Map<String, Object> row, List<String> columns) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = row.get(columns.get(i));
+        }
+        return values;
+    }
+}
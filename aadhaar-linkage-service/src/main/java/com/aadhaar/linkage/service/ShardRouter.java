@@ -0,0 +1,186 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.util.LinkageKeyGenerator;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Maps person records onto N hash-partitioned shards (linkage.shards.*) and says which shard the current
+ * thread works on; {@code ShardRoutingDataSource} hands out connections of that shard.
+ * <p>
+ * A record lives on the shard of its linkage key, so lookups by key always route to one shard. New keys are
+ * drawn so that they land on the shard the transaction already runs on: an INSERT of a new person runs on the
+ * home shard of its identity-match key, an UPDATE on the shard of the record it replaces. Lookups by
+ * identity-match key therefore go to the home shard, which also points at identities living elsewhere
+ * ({@link MatchPointers}).
+ * <p>
+ * Shards are picked with jump consistent hashing, so growing from N to N+1 shards moves only about 1/(N+1) of
+ * the records ({@link ShardRebalancer}). With sharding disabled there is one shard and every call is a no-op.
+ */
+@Component
+public class ShardRouter {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+    private final LinkageKeyGenerator keys;
+    private final ExecutorService fanOut;
+
+    public ShardRouter(LinkageKeyGenerator keys,
+                       @Value("${linkage.shards.enabled:false}") boolean enabled,
+                       @Value("${linkage.shards.count:1}") int count,
+                       @Value("${linkage.shards.fan-out-threads:8}") int fanOutThreads) {
+        this.count = enabled ? Math.max(1, count) : 1;
+        this.keys = keys;
+        this.fanOut = this.count == 1 ? null : Executors.newFixedThreadPool(Math.max(1, fanOutThreads), r -> {
+            Thread t = new Thread(r, "shard-fan-out");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Shard bound to the calling thread, or {@code null} outside {@link #callOn} (the default shard).
+     */
+    public static Integer currentShard() {
+        return CURRENT.get();
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    // ---------------- ROUTING ----------------
+    public int shardForKey(String linkageKey) {
+        return count == 1 ? 0 : jump(mix(linkageKey.hashCode()), count);
+    }
+
+    /**
+     * Home shard of an identity: where an INSERT of a new person puts it.
+     */
+    public int shardForMatch(IdentityHash matchKey) {
+        return count == 1 ? 0 : jump(mix(matchKey.hashCode()), count);
+    }
+
+    /**
+     * New linkage key ({@link LinkageKeyGenerator}) that routes to the current shard (about {@code count} draws
+     * on average).
+     */
+    public String newKey() {
+        Integer current = CURRENT.get();
+        int shard = current == null ? 0 : current;
+        String key;
+        do {
+            key = keys.next();
+        } while (count > 1 && shardForKey(key) != shard);
+        return key;
+    }
+
+    // ---------------- EXECUTION ----------------
+    /**
+     * Runs the work with the calling thread bound to the given shard. Transactions must start inside it,
+     * since a transaction keeps the connection it began with.
+     */
+    public <T> T callOn(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Runs the lookup on every shard except {@code skip}, in parallel, and returns a hit if any shard had one.
+     */
+    public <T> Optional<T> findOnOtherShards(int skip, IntFunction<Optional<T>> lookup) {
+        if (count == 1) return Optional.empty();
+
+        List<Future<Optional<T>>> futures = new ArrayList<>(count - 1);
+        for (int shard = 0; shard < count; shard++) {
+            if (shard == skip) continue;
+            int target = shard;
+            futures.add(fanOut.submit(() -> callOn(target, () -> lookup.apply(target))));
+        }
+        Optional<T> found = Optional.empty();
+        for (Future<Optional<T>> future : futures) {
+            Optional<T> result = await(future);
+            if (found.isEmpty()) found = result;
+        }
+        return found;
+    }
+
+    /**
+     * Runs the work on every shard, in parallel, and returns the results in shard order.
+     */
+    public <T> List<T> onAllShards(IntFunction<T> work) {
+        if (count == 1) return Collections.singletonList(work.apply(0));
+
+        List<Future<T>> futures = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            int target = shard;
+            futures.add(fanOut.submit(() -> callOn(target, () -> work.apply(target))));
+        }
+        List<T> results = new ArrayList<>(count);
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fanOut != null) fanOut.shutdownNow();
+    }
+
+    // ---------------- HELPERS ----------------
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during shard fan-out", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Shard fan-out failed: " + e.getCause(), e.getCause());
+        }
+    }
+
+    // Spreads a 32-bit hash code over 64 bits (MurmurHash3 finalizer)
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Lamping & Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+    static int jump(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+}
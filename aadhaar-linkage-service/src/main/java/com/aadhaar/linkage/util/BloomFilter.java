@@ -0,0 +1,119 @@
+package com.aadhaar.linkage.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter over digests (SHA-256 or similar): "definitely absent" or "maybe present".
+ * <p>
+ * Digests are already uniformly distributed, so the two base hashes are simply their first 16 bytes and the
+ * k probes are {@code h1 + i * h2} (Kirsch and Mitzenmacher). Sized for an expected number of insertions and a
+ * false-positive rate. Safe for concurrent {@link #put} and {@link #mightContain}; nothing is ever removed.
+ * {@link #writeTo} and {@link #readFrom} save and restore the bits, e.g. across restarts.
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        long words = Math.max(1, (m + 63) >>> 6);
+        if (words > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Bloom filter too large for " + n + " insertions at fpp " + p);
+        this.bits = new AtomicLongArray((int) words);
+        this.bitCount = words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    private BloomFilter(long[] words, int hashCount, long insertions) {
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words.length << 6;
+        this.hashCount = hashCount;
+        this.insertions.add(insertions);
+    }
+
+    public void put(byte[] digest) {
+        long h1 = word(digest, 0);
+        long h2 = word(digest, 8) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(index)) & mask) == 0 && !bits.compareAndSet(index, current, current | mask)) {
+                // lost a race for this word, retry
+            }
+        }
+        insertions.increment();
+    }
+
+    public boolean mightContain(byte[] digest) {
+        long h1 = word(digest, 0);
+        long h2 = word(digest, 8) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Number of {@link #put} calls, duplicates included.
+     */
+    public long insertions() {
+        return insertions.sum();
+    }
+
+    /**
+     * False-positive rate expected at the current number of insertions.
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions() / bitCount), hashCount);
+    }
+
+    public long bitCount() {
+        return bitCount;
+    }
+
+    // ---------------- SNAPSHOTS ----------------
+    /**
+     * Writes the filter; puts that run concurrently may or may not be included.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(bits.length());
+        out.writeInt(hashCount);
+        out.writeLong(insertions());
+        for (int i = 0; i < bits.length(); i++) {
+            out.writeLong(bits.get(i));
+        }
+    }
+
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int words = in.readInt();
+        int hashCount = in.readInt();
+        long insertions = in.readLong();
+        if (words <= 0 || hashCount <= 0 || insertions < 0)
+            throw new IOException("Corrupt Bloom filter header");
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashCount, insertions);
+    }
+
+    private static long word(byte[] digest, int from) {
+        long w = 0;
+        for (int i = from; i < from + 8; i++) {
+            w = w << 8 | (digest[i] & 0xff);
+        }
+        return w;
+    }
+}
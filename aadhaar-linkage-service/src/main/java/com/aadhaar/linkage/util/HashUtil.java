@@ -3,30 +3,94 @@ package com.aadhaar.linkage.util;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
 
+/**
+ * SHA-256 helpers. Digests and encode buffers are kept per thread, so hashing a value
+ * allocates only its result.
+ */
 public class HashUtil {
 
+    public static final int SHA256_LENGTH = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(HashUtil::newSha256);
+
+    // Scratch space for the normalized UTF-8 bytes of ASCII input; grows to the longest value seen
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[128]);
+
     private HashUtil() {}
 
     public static String sha256(String input) {
         if (input == null) return null;
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] encodedHash = digest.digest(input.trim().toLowerCase().getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(encodedHash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error while hashing: " + e.getMessage());
+        return toHex(sha256Bytes(input));
+    }
+
+    /**
+     * Raw SHA-256 of the trimmed, lower-cased input, or {@code null} for {@code null} input.
+     */
+    public static byte[] sha256Bytes(String input) {
+        if (input == null) return null;
+        MessageDigest digest = DIGEST.get();
+        updateNormalized(digest, input);
+        return digest.digest();
+    }
+
+    /**
+     * Raw SHA-256 over the concatenation of already-binary parts (no normalization).
+     */
+    public static byte[] sha256Bytes(byte[]... parts) {
+        MessageDigest digest = DIGEST.get();
+        for (byte[] part : parts) {
+            digest.update(part);
         }
+        return digest.digest();
     }
 
-    private static String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1)
-                hexString.append('0');
-            hexString.append(hex);
+    /**
+     * Feeds {@code input.trim().toLowerCase(Locale.ROOT)} as UTF-8 into the digest.
+     * Plain ASCII (the common case for names, dates and document numbers) is normalized
+     * in place without building intermediate strings.
+     */
+    static void updateNormalized(MessageDigest digest, String input) {
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ') start++;
+        while (end > start && input.charAt(end - 1) <= ' ') end--;
+
+        int len = end - start;
+        byte[] buf = SCRATCH.get();
+        if (buf.length < len) {
+            buf = new byte[Math.max(len, buf.length * 2)];
+            SCRATCH.set(buf);
+        }
+        for (int i = 0; i < len; i++) {
+            char c = input.charAt(start + i);
+            if (c >= 0x80) {
+                digest.update(input.substring(start, end).toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buf[i] = (byte) (c >= 'A' && c <= 'Z' ? c | 0x20 : c);
+        }
+        digest.update(buf, 0, len);
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            out[j++] = HEX[b >>> 4];
+            out[j++] = HEX[b & 0x0f];
+        }
+        return new String(out);
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available: " + e.getMessage(), e);
         }
-        return hexString.toString();
     }
 }
@@ -0,0 +1,20 @@
+package com.aadhaar.linkage.util;
+
+import java.util.UUID;
+
+/**
+ * Source of new linkage keys. Whatever the generator, a key is a UUID string on the API and in the database, so
+ * keys minted by different generators live side by side.
+ */
+@FunctionalInterface
+public interface LinkageKeyGenerator {
+
+    String next();
+
+    /**
+     * Random (version 4) UUIDs, as every key was before time-ordered ones.
+     */
+    static LinkageKeyGenerator random() {
+        return () -> UUID.randomUUID().toString();
+    }
+}
@@ -0,0 +1,239 @@
+package com.aadhaar.linkage.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque records in fixed-size, memory-mapped segment files.
+ * <p>
+ * A record is {@code [int length][int crc32][payload]}; a zero length marks the end of the written part of a
+ * segment. Offsets are byte positions over the whole log: the segment file {@code <base offset>.log} holds the
+ * records from its base up to the base of the next segment, so an offset names one record for good and a
+ * consumer resumes from the {@code nextOffset} of the last record it processed.
+ * <p>
+ * {@link #append} writes a whole batch, forces it to disk once, and only then makes it visible to readers, so
+ * what a reader sees survives a crash. On reopen the tail of the last segment is scanned and anything after the
+ * last intact record is ignored. One writer, any number of concurrent readers.
+ */
+public final class MappedJournal implements Closeable {
+
+    private static final int HEADER = 8;
+    private static final String SUFFIX = ".log";
+
+    public record Entry(long offset, long nextOffset, byte[] payload) {}
+
+    private static final class Segment {
+        final long base;
+        final Path file;
+        final MappedByteBuffer buffer;
+
+        Segment(long base, Path file, MappedByteBuffer buffer) {
+            this.base = base;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path dir;
+    private final int segmentSize;
+    private final int retainSegments;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private volatile long end;
+
+    /**
+     * @param retainSegments segments kept when rolling, oldest deleted first; 0 keeps all
+     */
+    public MappedJournal(Path dir, int segmentSize, int retainSegments) throws IOException {
+        if (segmentSize <= HEADER)
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        this.dir = Files.createDirectories(dir);
+        this.segmentSize = segmentSize;
+        this.retainSegments = retainSegments;
+
+        List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> bases.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length()))));
+        }
+        bases.sort(null);
+        for (long base : bases) {
+            segments.put(base, map(base));
+        }
+        if (segments.isEmpty()) {
+            active = map(0);
+            segments.put(0L, active);
+            end = 0;
+        } else {
+            active = segments.lastEntry().getValue();
+            end = active.base + recover(active);
+        }
+    }
+
+    /** Offset of the oldest retained record. */
+    public long startOffset() {
+        return segments.firstKey();
+    }
+
+    /** Offset the next appended record will get. */
+    public long endOffset() {
+        return end;
+    }
+
+    /** Base offset of the segment being written. */
+    public synchronized long activeSegmentOffset() {
+        return active.base;
+    }
+
+    // ---------------- WRITES ----------------
+    /**
+     * Appends the records in order, forces them to disk with one fsync per touched segment, then publishes them.
+     * A batch that does not fit into the active segment starts a new one.
+     *
+     * @return the end offset after the batch
+     */
+    public synchronized long append(List<byte[]> records) throws IOException {
+        long batchBytes = 0;
+        for (byte[] payload : records) {
+            if (payload.length > segmentSize - HEADER)
+                throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds the segment size");
+            batchBytes += HEADER + payload.length;
+        }
+        long position = end - active.base;
+        if (position + batchBytes > segmentSize && position > 0) {
+            roll(end);
+            position = 0;
+        }
+        for (byte[] payload : records) {
+            if (position + HEADER + payload.length > segmentSize) {
+                active.buffer.force();
+                roll(active.base + position);
+                position = 0;
+            }
+            crc.reset();
+            crc.update(payload);
+            int at = (int) position;
+            active.buffer.put(at + HEADER, payload);
+            active.buffer.putInt(at + 4, (int) crc.getValue());
+            active.buffer.putInt(at, payload.length);
+            position += HEADER + payload.length;
+        }
+        active.buffer.force();
+        end = active.base + position;
+        return end;
+    }
+
+    /**
+     * Deletes the segments that hold only records before {@code offset}, for a log whose consumer has processed
+     * everything up to there. The active segment is always kept.
+     */
+    public synchronized void deleteBefore(long offset) throws IOException {
+        while (segments.size() > 1) {
+            Map.Entry<Long, Segment> oldest = segments.firstEntry();
+            if (segments.higherKey(oldest.getKey()) > offset) break;
+            segments.remove(oldest.getKey());
+            Files.deleteIfExists(oldest.getValue().file);
+        }
+    }
+
+    // ---------------- READS ----------------
+    /**
+     * Up to {@code max} records starting at {@code offset}. An offset older than the retained log starts at the
+     * oldest record; an offset at the end returns nothing.
+     *
+     * @throws IllegalArgumentException if {@code offset} falls inside the log but not on the start of a record
+     */
+    public List<Entry> read(long offset, int max) {
+        List<Entry> out = new ArrayList<>(Math.min(max, 1024));
+        CRC32 check = new CRC32();
+        long limit = end;
+        long current = Math.max(offset, startOffset());
+        while (out.size() < max && current < limit) {
+            Map.Entry<Long, Segment> floor = segments.floorEntry(current);
+            if (floor == null) break;
+            Segment segment = floor.getValue();
+            int position = (int) (current - segment.base);
+            int length = position + HEADER <= segmentSize ? segment.buffer.getInt(position) : 0;
+            if (length == 0) {
+                // End of this segment's data: the next record starts the next segment
+                Long next = segments.higherKey(segment.base);
+                if (next == null) break;
+                current = next;
+                continue;
+            }
+            // Only a caller-supplied offset can miss a record start; the header then holds payload bytes
+            if (length < 0 || position + HEADER + length > segmentSize)
+                throw new IllegalArgumentException("Offset " + current + " is not the start of a record");
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER, payload);
+            check.reset();
+            check.update(payload);
+            if ((int) check.getValue() != segment.buffer.getInt(position + 4))
+                throw new IllegalArgumentException("Offset " + current + " is not the start of a record");
+            long nextOffset = current + HEADER + length;
+            out.add(new Entry(current, nextOffset, payload));
+            current = nextOffset;
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.values().forEach(s -> s.buffer.force());
+    }
+
+    // ---------------- HELPERS ----------------
+    private void roll(long base) throws IOException {
+        active = map(base);
+        segments.put(base, active);
+        while (retainSegments > 0 && segments.size() > retainSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            Files.deleteIfExists(oldest.file);
+        }
+    }
+
+    private Segment map(long base) throws IOException {
+        Path file = dir.resolve(String.format("%020d%s", base, SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (raf.length() < segmentSize) raf.setLength(segmentSize);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(base, file, buffer);
+        }
+    }
+
+    // Length of the intact prefix of a segment; a torn write after the last forced batch is cut off
+    private int recover(Segment segment) {
+        int position = 0;
+        while (position + HEADER <= segmentSize) {
+            int length = segment.buffer.getInt(position);
+            if (length <= 0 || position + HEADER + length > segmentSize) break;
+            byte[] payload = new byte[length];
+            segment.buffer.get(position + HEADER, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(position + 4)) break;
+            position += HEADER + length;
+        }
+        // Clear a torn tail, so none of it can pass for a record once new ones are appended in front of it
+        if (position + HEADER <= segmentSize && segment.buffer.getInt(position) != 0) {
+            for (int i = position; i < segmentSize; i++) {
+                segment.buffer.put(i, (byte) 0);
+            }
+            segment.buffer.force();
+        }
+        return position;
+    }
+}
@@ -0,0 +1,72 @@
+package com.aadhaar.linkage.util;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version 7 UUIDs (RFC 9562): a 48-bit millisecond timestamp, a 12-bit sequence within the millisecond, and
+ * 62 random bits. Keys from one generator are strictly increasing, also as strings, so new rows are appended at
+ * the right edge of the primary-key index instead of splitting pages all over it.
+ * <p>
+ * The random bits come from a per-thread DRBG, read in blocks, which keeps keys unguessable without every thread contending for
+ * the one {@link SecureRandom} behind {@link UUID#randomUUID()}. More than 4096 keys in one millisecond borrow
+ * from the next millisecond rather than going out of order.
+ */
+public final class TimeOrderedKeyGenerator implements LinkageKeyGenerator {
+
+    private static final TimeOrderedKeyGenerator SHARED = new TimeOrderedKeyGenerator(Clock.systemUTC());
+
+    private static final ThreadLocal<RandomBits> RANDOM = ThreadLocal.withInitial(RandomBits::new);
+
+    // Random bits drawn from the DRBG a block at a time: one call per key would cost more than the rest of the key
+    private static final class RandomBits {
+        final SecureRandom random;
+        final ByteBuffer block = ByteBuffer.allocate(1024).position(1024);
+
+        RandomBits() {
+            SecureRandom r;
+            try {
+                r = SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                r = new SecureRandom();
+            }
+            this.random = r;
+        }
+
+        long nextLong() {
+            if (!block.hasRemaining()) {
+                random.nextBytes(block.array());
+                block.clear();
+            }
+            return block.getLong();
+        }
+    }
+
+    private final Clock clock;
+    // (millis << 12 | sequence) of the last key handed out
+    private final AtomicLong last = new AtomicLong();
+
+    public TimeOrderedKeyGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * The JVM-wide instance, so every caller draws from one increasing sequence.
+     */
+    public static TimeOrderedKeyGenerator shared() {
+        return SHARED;
+    }
+
+    @Override
+    public String next() {
+        long now = clock.millis() << 12;
+        long stamp = last.accumulateAndGet(now, (prev, candidate) -> Math.max(prev + 1, candidate));
+        long msb = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xfffL);
+        long lsb = RANDOM.get().nextLong() & 0x3fffffffffffffffL | 0x8000000000000000L;
+        return new UUID(msb, lsb).toString();
+    }
+}
@@ -0,0 +1,18 @@
+-- Transactional outbox: one row per linkage mutation, written in the mutation's own transaction.
+-- LinkageEventRelay appends the rows to the event journal and then deletes them.
+CREATE SEQUENCE linkage_event_seq START WITH 1 INCREMENT BY 1;
+
+CREATE TABLE linkage_event (
+    id              BIGINT       NOT NULL,
+    event_type      VARCHAR(16)  NOT NULL,
+    old_key         VARCHAR(255),
+    new_key         VARCHAR(255),
+    source          VARCHAR(16)  NOT NULL,
+    aadhaar_delta   INTEGER      DEFAULT 0 NOT NULL,
+    pan_delta       INTEGER      DEFAULT 0 NOT NULL,
+    voter_id_delta  INTEGER      DEFAULT 0 NOT NULL,
+    dl_delta        INTEGER      DEFAULT 0 NOT NULL,
+    old_key_deleted BOOLEAN      DEFAULT FALSE NOT NULL,
+    created_at      TIMESTAMP(6) NOT NULL,
+    CONSTRAINT pk_linkage_event PRIMARY KEY (id)
+);
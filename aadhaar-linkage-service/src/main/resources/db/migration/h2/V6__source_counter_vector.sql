@@ -0,0 +1,22 @@
+-- Per-source counters packed into one vector (SourceCounters): 12 bits per source, in LinkageSource order
+-- (Aadhaar, PAN, voter ID, driving licence), plus the bitmap of sources whose counter is above zero
+ALTER TABLE person_identity ADD COLUMN source_counters BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE person_identity ADD COLUMN source_mask INTEGER DEFAULT 0 NOT NULL;
+
+UPDATE person_identity SET
+    source_counters = CAST(LEAST(GREATEST(aadhaar_counter, 0), 4095) AS BIGINT)
+                    + CAST(LEAST(GREATEST(pan_counter, 0), 4095) AS BIGINT) * 4096
+                    + CAST(LEAST(GREATEST(voter_id_counter, 0), 4095) AS BIGINT) * 16777216
+                    + CAST(LEAST(GREATEST(dl_counter, 0), 4095) AS BIGINT) * 68719476736,
+    source_mask = CASE WHEN aadhaar_counter > 0 THEN 1 ELSE 0 END
+                + CASE WHEN pan_counter > 0 THEN 2 ELSE 0 END
+                + CASE WHEN voter_id_counter > 0 THEN 4 ELSE 0 END
+                + CASE WHEN dl_counter > 0 THEN 8 ELSE 0 END;
+
+ALTER TABLE person_identity DROP COLUMN aadhaar_counter;
+ALTER TABLE person_identity DROP COLUMN pan_counter;
+ALTER TABLE person_identity DROP COLUMN voter_id_counter;
+ALTER TABLE person_identity DROP COLUMN dl_counter;
+
+-- Serves presence filters such as "holds PAN but no voter ID" (source_mask IN (...))
+CREATE INDEX idx_person_source_mask ON person_identity (source_mask);
@@ -0,0 +1,8 @@
+-- Write-behind journal records already written (LinkageWriteBehind), by journal and offset, in the same
+-- transaction as their rows. A replay after a crash between commit and checkpoint skips them; rows below a
+-- journal's checkpoint are deleted by its next flush.
+CREATE TABLE write_behind_applied (
+    journal_id   VARCHAR(36) NOT NULL,
+    entry_offset BIGINT      NOT NULL,
+    CONSTRAINT pk_write_behind_applied PRIMARY KEY (journal_id, entry_offset)
+);
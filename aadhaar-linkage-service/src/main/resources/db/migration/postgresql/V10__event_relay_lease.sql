@@ -0,0 +1,10 @@
+-- Which node relays the outbox into its event journal (LinkageEventRelay). Only the holder of an unexpired
+-- lease relays, so events are not split across the journals of several nodes; the row on shard 0 is the one used.
+CREATE TABLE event_relay_lease (
+    name       VARCHAR(32) NOT NULL,
+    owner      VARCHAR(36),
+    expires_at TIMESTAMP   NOT NULL,
+    CONSTRAINT pk_event_relay_lease PRIMARY KEY (name)
+);
+
+INSERT INTO event_relay_lease (name, owner, expires_at) VALUES ('relay', NULL, TIMESTAMP '1970-01-01 00:00:00');
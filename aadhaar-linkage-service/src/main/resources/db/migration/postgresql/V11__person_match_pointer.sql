@@ -0,0 +1,8 @@
+-- Identities whose record lives away from their home shard (MatchPointers): one row on the home shard, pointing
+-- at the record's linkage key, so an INSERT finds the person without asking every shard. Only used with
+-- linkage.shards.enabled; a rebalance rebuilds the rows.
+CREATE TABLE person_match_pointer (
+    identity_match_key  BYTEA       NOT NULL,
+    aadhaar_linkage_key VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_person_match_pointer PRIMARY KEY (identity_match_key)
+);
@@ -0,0 +1,29 @@
+-- Identity hashes are raw SHA-256 digests (IdentityHash), 32 bytes each, stored as BYTEA
+CREATE TABLE person_identity (
+    aadhaar_linkage_key   VARCHAR(255) NOT NULL,
+    hashed_aadhaar_number BYTEA,
+    hashed_pan_number     BYTEA,
+    hashed_voter_id       BYTEA,
+    hashed_dl_number      BYTEA,
+    hashed_forename       BYTEA,
+    hashed_secondname     BYTEA,
+    hashed_lastname       BYTEA,
+    hashed_dob            BYTEA,
+    hashed_address        BYTEA,
+    identity_match_key    BYTEA,
+    gender                VARCHAR(10),
+    aadhaar_counter       INTEGER      DEFAULT 0 NOT NULL,
+    pan_counter           INTEGER      DEFAULT 0 NOT NULL,
+    voter_id_counter      INTEGER      DEFAULT 0 NOT NULL,
+    dl_counter            INTEGER      DEFAULT 0 NOT NULL,
+    created_at            TIMESTAMP(6),
+    updated_at            TIMESTAMP(6),
+    version               BIGINT       DEFAULT 0 NOT NULL,
+    CONSTRAINT pk_person_identity PRIMARY KEY (aadhaar_linkage_key),
+    CONSTRAINT uk_person_identity_match UNIQUE (identity_match_key)
+);
+
+CREATE INDEX idx_person_aadhaar_match ON person_identity (hashed_aadhaar_number, hashed_dob, hashed_forename, hashed_lastname);
+CREATE INDEX idx_person_pan ON person_identity (hashed_pan_number);
+CREATE INDEX idx_person_voter ON person_identity (hashed_voter_id);
+CREATE INDEX idx_person_dl ON person_identity (hashed_dl_number);
@@ -0,0 +1,9 @@
+-- Blocking index for fuzzy identity matching (IdentityBlocking): keyed-hash (HMAC-SHA256) tokens of the
+-- forename's phonetic codes and bigrams, each combined with the DOB, pointing at the record they describe
+CREATE TABLE identity_block_token (
+    token       BYTEA        NOT NULL,
+    linkage_key VARCHAR(255) NOT NULL,
+    CONSTRAINT pk_identity_block_token PRIMARY KEY (token, linkage_key)
+);
+
+CREATE INDEX idx_block_token_key ON identity_block_token (linkage_key);
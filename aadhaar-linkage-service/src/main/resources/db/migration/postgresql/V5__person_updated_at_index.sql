@@ -0,0 +1,2 @@
+-- Serves incremental exports (updated_at > since) and the match-key filter catch-up after a restart
+CREATE INDEX idx_person_updated_at ON person_identity (updated_at);
@@ -0,0 +1,16 @@
+-- Append-only UPDATE history (LinkageHistory): one row per key an UPDATE created, linked to the key it
+-- replaced and to the first key of its lineage. delta holds only the changed fields (bitmap in changed);
+-- compaction folds old deltas into the newest old one and clears the rest.
+CREATE TABLE person_history (
+    linkage_key     VARCHAR(255) NOT NULL,
+    lineage_key     VARCHAR(255) NOT NULL,
+    predecessor_key VARCHAR(255) NOT NULL,
+    depth           INTEGER      NOT NULL,
+    source          VARCHAR(16)  NOT NULL,
+    changed         INTEGER      DEFAULT 0 NOT NULL,
+    delta           BYTEA,
+    created_at      TIMESTAMP(6) NOT NULL,
+    CONSTRAINT pk_person_history PRIMARY KEY (linkage_key)
+);
+
+CREATE INDEX idx_person_history_lineage ON person_history (lineage_key, depth);
@@ -0,0 +1,52 @@
+package com.aadhaar.linkage;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Requests and response readers shared by the tests.
+ */
+public final class LinkageFixtures {
+
+    private LinkageFixtures() {
+    }
+
+    /**
+     * A request for the person with this forename, born 1990-01-01; without data when {@code forename} is null.
+     */
+    public static LinkageRequest request(String action, String source, String key, String forename) {
+        return LinkageRequest.builder()
+                .action(action)
+                .source(source)
+                .oldAadhaarLinkageKey(key)
+                .data(forename == null ? null : Map.of("forename", forename, "dob", "1990-01-01"))
+                .build();
+    }
+
+    /**
+     * Linkage key of the record an INSERT or SEARCH answered with.
+     */
+    public static String key(LinkageResponse response) {
+        return (String) data(response).get("aadhaarLinkageKey");
+    }
+
+    /**
+     * Linkage key an UPDATE created.
+     */
+    public static String newKey(LinkageResponse response) {
+        return (String) data(response).get("newAadhaarLinkageKey");
+    }
+
+    /**
+     * Data of a successful response; fails the test, with the response's message, otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> data(LinkageResponse response) {
+        assertThat(response.getStatus()).as(response.getMessage()).isEqualTo("SUCCESS");
+        return (Map<String, Object>) response.getData();
+    }
+}
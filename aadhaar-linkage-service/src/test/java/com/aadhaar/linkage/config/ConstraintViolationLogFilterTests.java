@@ -0,0 +1,39 @@
+package com.aadhaar.linkage.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Only the message after a SQLState of class 23 is dropped; the SQLState line and other errors stay.
+ */
+class ConstraintViolationLogFilterTests {
+
+    private final ConstraintViolationLogFilter filter = new ConstraintViolationLogFilter();
+    private final LoggerContext context = new LoggerContext();
+    private final Logger helper = context.getLogger(ConstraintViolationLogFilter.LOGGER);
+
+    @Test
+    void dropsOnlyConstraintViolationMessages() {
+        assertThat(decide(Level.WARN, "SQL Error: 23505, SQLState: 23505")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(Level.ERROR, null)).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(Level.ERROR, "Unique index or primary key violation: ... VALUES (X'00ff')"))
+                .isEqualTo(FilterReply.DENY);
+
+        assertThat(decide(Level.WARN, "SQL Error: 90067, SQLState: 08001")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(Level.ERROR, "Connection is broken")).isEqualTo(FilterReply.NEUTRAL);
+
+        Logger other = context.getLogger("com.aadhaar.linkage");
+        assertThat(decide(Level.WARN, "SQL Error: 23505, SQLState: 23505")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(filter.decide(null, other, Level.ERROR, "unrelated", null, null)).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(Level.ERROR, "duplicate key value violates unique constraint")).isEqualTo(FilterReply.DENY);
+    }
+
+    private FilterReply decide(Level level, String message) {
+        return filter.decide(null, helper, level, message, null, null);
+    }
+}
@@ -0,0 +1,116 @@
+package com.aadhaar.linkage.config;
+
+import com.aadhaar.linkage.AadhaarLinkageServiceApplication;
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.model.PersonIdentity;
+import com.aadhaar.linkage.repository.LinkageRepository;
+import com.aadhaar.linkage.service.LinkageService;
+import com.aadhaar.linkage.util.HashUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Flyway brings both fresh and pre-Flyway databases to the entity layout (ddl-auto=validate would
+ * refuse to start otherwise), and the h2-server profile serves the service over TCP.
+ */
+class SchemaMigrationTests {
+
+    private static final Path WORK_DIR = Path.of("target", "schema-migration");
+
+    @Test
+    void preFlywayDatabaseIsBaselinedAndUpgraded() throws Exception {
+        FileSystemUtils.deleteRecursively(WORK_DIR);
+        String url = "jdbc:h2:file:./" + WORK_DIR + "/legacy";
+        String forename = HashUtil.sha256("ramesh");
+        String dob = HashUtil.sha256("1998-05-10");
+        try (Connection con = DriverManager.getConnection(url, "sa", "");
+             Statement st = con.createStatement()) {
+            // Layout the first release got from ddl-auto: hex VARCHAR hashes, no version or match key
+            st.execute("CREATE TABLE PERSON_IDENTITY (AADHAAR_LINKAGE_KEY VARCHAR(255) PRIMARY KEY, "
+                    + "HASHED_AADHAAR_NUMBER VARCHAR(64), HASHED_PAN_NUMBER VARCHAR(64), HASHED_VOTER_ID VARCHAR(64), "
+                    + "HASHED_DL_NUMBER VARCHAR(64), HASHED_FORENAME VARCHAR(64), HASHED_SECONDNAME VARCHAR(64), "
+                    + "HASHED_LASTNAME VARCHAR(64), HASHED_DOB VARCHAR(64), HASHED_ADDRESS VARCHAR(128), "
+                    + "GENDER VARCHAR(10), AADHAAR_COUNTER INT, PAN_COUNTER INT, VOTER_ID_COUNTER INT, DL_COUNTER INT, "
+                    + "CREATED_AT TIMESTAMP, UPDATED_AT TIMESTAMP)");
+            st.execute("INSERT INTO PERSON_IDENTITY VALUES ('old', NULL, NULL, NULL, NULL, '" + forename + "', NULL, "
+                    + "NULL, '" + dob + "', NULL, 'Male', 1, 0, 0, 0, TIMESTAMP '2024-01-01 00:00:00', TIMESTAMP '2024-01-01 00:00:00')");
+            st.execute("INSERT INTO PERSON_IDENTITY VALUES ('new', NULL, NULL, NULL, NULL, '" + forename + "', NULL, "
+                    + "NULL, '" + dob + "', NULL, 'Male', 0, 1, 0, 0, TIMESTAMP '2024-02-01 00:00:00', TIMESTAMP '2024-02-01 00:00:00')");
+            // Pre-SHA-256 releases stored String.hashCode() in hex
+            st.execute("INSERT INTO PERSON_IDENTITY VALUES ('hashcode', '1a2b3c4d', NULL, NULL, NULL, NULL, NULL, "
+                    + "NULL, NULL, NULL, NULL, 1, 0, 0, 0, NULL, NULL)");
+        }
+
+        try (ConfigurableApplicationContext ctx = start("--spring.datasource.url=" + url)) {
+            JdbcTemplate jdbc = ctx.getBean(JdbcTemplate.class);
+            assertThat(jdbc.queryForList("SELECT \"version\" FROM \"flyway_schema_history\" "
+                    + "WHERE \"version\" IS NOT NULL ORDER BY \"installed_rank\"", String.class))
+                    .containsExactly("1", "2", "3", "4", "5", "6", "7", "8", "10", "11");
+
+            LinkageRepository repo = ctx.getBean(LinkageRepository.class);
+            IdentityHash matchKey = IdentityHash.combine(IdentityHash.fromHex(forename), IdentityHash.fromHex(dob));
+            assertThat(repo.findByIdentityMatchKey(matchKey)).map(PersonIdentity::getAadhaarLinkageKey).contains("new");
+            assertThat(repo.findById("old").orElseThrow().getIdentityMatchKey()).isNull();
+            assertThat(repo.findById("hashcode").orElseThrow().getHashedAadhaarNumber())
+                    .isEqualTo(IdentityHash.wrap(HashUtil.sha256Bytes("1a2b3c4d")));
+        }
+    }
+
+    @Test
+    void h2ServerProfileServesTheServiceOverTcp() throws Exception {
+        FileSystemUtils.deleteRecursively(WORK_DIR.resolve("server"));
+        int port = freePort();
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(AadhaarLinkageServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("h2-server")
+                .run("--H2_PORT=" + port, "--linkage.h2-server.base-dir=./" + WORK_DIR.resolve("server"),
+                        "--spring.jpa.show-sql=false", "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN")) {
+            LinkageResponse response = ctx.getBean(LinkageService.class).processRequest(LinkageRequest.builder()
+                    .action("INSERT").source("AADHAAR").data(Map.of("forename", "ramesh", "dob", "1998-05-10")).build());
+            assertThat(response.getStatus()).isEqualTo("SUCCESS");
+
+            // A second node connecting over TCP sees the same data
+            try (Connection con = DriverManager.getConnection(
+                    "jdbc:h2:tcp://localhost:" + port + "/aadhaar_linkage_db", "sa", "");
+                 Statement st = con.createStatement();
+                 var rs = st.executeQuery("SELECT COUNT(*) FROM PERSON_IDENTITY")) {
+                rs.next();
+                assertThat(rs.getInt(1)).isEqualTo(1);
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String... args) {
+        List<String> all = new ArrayList<>(List.of(args));
+        all.addAll(List.of("--spring.jpa.show-sql=false", "--logging.level.org.hibernate.SQL=WARN",
+                "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"));
+        return new SpringApplicationBuilder(AadhaarLinkageServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(all.toArray(String[]::new));
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
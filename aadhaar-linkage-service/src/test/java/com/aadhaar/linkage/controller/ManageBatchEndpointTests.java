@@ -0,0 +1,107 @@
+package com.aadhaar.linkage.controller;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.service.LinkageService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /manage/batch answers every item in order, as a JSON array or NDJSON. An unreadable NDJSON line gets an ERROR
+ * line of its own, and an item that breaks its chunk's transaction fails alone when the chunk is replayed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class ManageBatchEndpointTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void jsonArrayBatch() {
+        String forename = "array-" + UUID.randomUUID();
+        List<LinkageRequest> batch = List.of(
+                request("INSERT", "AADHAAR", null, forename),
+                request("INSERT", "PAN", null, forename),
+                request("DELETE", "PAN", "no-such-key", null));
+
+        JsonNode body = objectMapper.valueToTree(rest.postForObject("/api/v1/person/manage/batch", batch, Map.class));
+        assertThat(body.path("message").asText()).isEqualTo("Batch processed: 3 requests, 1 failed");
+        assertThat(body.path("data")).extracting(r -> r.path("status").asText())
+                .containsExactly("SUCCESS", "SUCCESS", "ERROR");
+        assertThat(body.path("data").get(1).path("data").path("aadhaarLinkageKey"))
+                .isEqualTo(body.path("data").get(0).path("data").path("aadhaarLinkageKey"));
+    }
+
+    @Test
+    void ndjsonBatchAnswersUnreadableLinesInPlace() throws Exception {
+        String first = "ndjson-" + UUID.randomUUID();
+        String second = "ndjson-" + UUID.randomUUID();
+        String body = objectMapper.writeValueAsString(request("INSERT", "AADHAAR", null, first)) + "\n"
+                + "{\"action\": \"INSERT\", \"source\": \n"
+                + "\n"
+                + objectMapper.writeValueAsString(request("INSERT", "VOTER", null, second)) + "\n";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/x-ndjson"));
+        String response = rest.postForObject("/api/v1/person/manage/batch", new HttpEntity<>(body, headers), String.class);
+
+        List<JsonNode> results = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            results.add(objectMapper.readTree(line));
+        }
+        assertThat(results).extracting(r -> r.path("status").asText()).containsExactly("SUCCESS", "ERROR", "SUCCESS");
+        assertThat(results.get(1).path("message").asText()).isEqualTo("Line 2 is not a valid request");
+        assertThat(rows(results.get(2).path("data").path("aadhaarLinkageKey").asText())).isOne();
+    }
+
+    @Test
+    void itemThatBreaksTheChunkFailsAlone() {
+        String taken = "taken-" + UUID.randomUUID();
+        linkageService.processRequest(request("INSERT", "AADHAAR", null, taken));
+        String other = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, "other-" + UUID.randomUUID())));
+        String fresh = "fresh-" + UUID.randomUUID();
+
+        // The UPDATE takes over another person's identity: the unique match key rolls the whole chunk back
+        List<LinkageRequest> batch = List.of(
+                request("INSERT", "PAN", null, fresh),
+                request("UPDATE", "AADHAAR", other, taken));
+        JsonNode body = objectMapper.valueToTree(rest.postForObject("/api/v1/person/manage/batch", batch, Map.class));
+
+        assertThat(body.path("data")).extracting(r -> r.path("status").asText()).containsExactly("SUCCESS", "ERROR");
+        assertThat(body.path("data").get(1).path("message").asText())
+                .isEqualTo("Identity details conflict with another existing record");
+        assertThat(rows(body.path("data").get(0).path("data").path("aadhaarLinkageKey").asText())).isOne();
+    }
+
+    private int rows(String key) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM person_identity WHERE aadhaar_linkage_key = ?", Integer.class, key);
+    }
+}
@@ -0,0 +1,130 @@
+package com.aadhaar.linkage.controller;
+
+import com.aadhaar.linkage.AadhaarLinkageServiceApplication;
+import com.aadhaar.linkage.config.ExecutionModeReport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Opt-in load test for /api/v1/person/manage: runs the same burst against each configuration being compared
+ * (platform vs virtual threads, dev vs prod logging) and prints throughput and latency percentiles for each.
+ * <p>
+ * Skipped unless run with {@code -Dlinkage.load=true}. {@code -Dlinkage.load.requests} and
+ * {@code -Dlinkage.load.concurrency} size the burst. Virtual threads need JDK 21+; on older JDKs the
+ * second run reports that it fell back to platform threads.
+ */
+@EnabledIfSystemProperty(named = "linkage.load", matches = "true")
+class ManageEndpointLoadTests {
+
+    private static final int REQUESTS = Integer.getInteger("linkage.load.requests", 20_000);
+    private static final int CONCURRENCY = Integer.getInteger("linkage.load.concurrency", 1_000);
+
+    @Test
+    void compareExecutionModes() throws Exception {
+        printHeader();
+        run("platform", "prod");
+        run("virtual", "prod", "virtual-threads");
+    }
+
+    @Test
+    void compareLoggingProfiles() throws Exception {
+        printHeader();
+        run("dev", "dev");
+        run("prod", "prod");
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-10s %10s %12s %10s %10s %10s%n", "mode", "errors", "req/s", "p50(ms)", "p99(ms)", "max(ms)");
+    }
+
+    private void run(String label, String... profiles) throws Exception {
+        try (ConfigurableApplicationContext ctx = new SpringApplicationBuilder(AadhaarLinkageServiceApplication.class)
+                .profiles(profiles)
+                // Command-line arguments, so they take precedence over application.properties
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + label + ";DB_CLOSE_DELAY=-1")) {
+            int port = ((WebServerApplicationContext) ctx).getWebServer().getPort();
+            boolean virtual = ctx.getBean(ExecutionModeReport.class).virtualThreadsActive();
+            URI uri = URI.create("http://localhost:" + port + "/api/v1/person/manage");
+            burst(uri); // warm-up, so neither mode is measured against a cold JIT
+            Result result = burst(uri);
+
+            System.out.printf("%-10s %10d %12.0f %10.1f %10.1f %10.1f%s%n", label, result.errors, result.throughput,
+                    result.percentile(50), result.percentile(99), result.percentile(100),
+                    "virtual".equals(label) && !virtual ? "  (JDK " + Runtime.version().feature() + ": platform threads)" : "");
+            assertThat(result.errors).isZero();
+        }
+    }
+
+    // Every caller inserts a new person and then searches it, so half the calls write and half read
+    private Result burst(URI uri) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        ExecutorService callers = Executors.newFixedThreadPool(CONCURRENCY);
+        long[] nanos = new long[REQUESTS];
+        int[] errors = new int[1];
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i += 2) {
+                int slot = i;
+                futures.add(callers.submit(() -> {
+                    String forename = UUID.randomUUID().toString();
+                    String key = call(client, uri, nanos, slot, errors, "{\"action\":\"INSERT\",\"source\":\"AADHAAR\","
+                            + "\"data\":{\"forename\":\"" + forename + "\",\"dob\":\"1990-01-01\"}}");
+                    call(client, uri, nanos, slot + 1, errors, "{\"action\":\"SEARCH\",\"source\":\"AADHAAR\","
+                            + "\"oldAadhaarLinkageKey\":\"" + key + "\"}");
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(5, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(nanos);
+            return new Result(errors[0], REQUESTS / seconds, nanos);
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static String call(HttpClient client, URI uri, long[] nanos, int slot, int[] errors, String body) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        long start = System.nanoTime();
+        try {
+            String response = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            nanos[slot] = System.nanoTime() - start;
+            if (!response.contains("\"SUCCESS\"")) throw new IllegalStateException(response);
+            int at = response.indexOf("\"aadhaarLinkageKey\":\"");
+            return at < 0 ? null : response.substring(at + 21, response.indexOf('"', at + 21));
+        } catch (Exception e) {
+            nanos[slot] = System.nanoTime() - start;
+            synchronized (errors) {
+                errors[0]++;
+            }
+            return null;
+        }
+    }
+
+    private record Result(int errors, double throughput, long[] sortedNanos) {
+        double percentile(int p) {
+            int index = Math.min(sortedNanos.length - 1, sortedNanos.length * p / 100);
+            return sortedNanos[index] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.aadhaar.linkage.controller;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.service.LinkageService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The Prometheus endpoint exposes the linkage, repository, cache and connection-pool meters.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:metrics;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+@AutoConfigureObservability // tests disable metrics export by default
+class MetricsEndpointTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    void prometheusEndpointExposesLinkageMetrics() {
+        linkageService.processRequest(LinkageRequest.builder().action("INSERT").source("Pan")
+                .data(Map.of("forename", UUID.randomUUID().toString(), "dob", "1990-01-01", "pan_number", "ABCDE1234F"))
+                .build());
+
+        String scrape = rest.getForObject("/actuator/prometheus", String.class);
+
+        assertThat(scrape)
+                .contains("linkage_requests_seconds_bucket{action=\"INSERT\",outcome=\"SUCCESS\",source=\"PAN\"")
+                .contains("spring_data_repository_invocations_seconds_bucket")
+                .contains("method=\"findByIdentityMatchKey\"")
+                .contains("cache_gets_total{cache=\"identity.byMatch\"")
+                .contains("hikaricp_connections_active");
+    }
+}
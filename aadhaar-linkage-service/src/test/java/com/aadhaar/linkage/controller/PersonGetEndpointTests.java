@@ -0,0 +1,82 @@
+package com.aadhaar.linkage.controller;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.service.LinkageService;
+import com.aadhaar.linkage.service.PersonViewCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.*;
+
+import java.util.UUID;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * GET /api/v1/person/{key} answers with the record's version as ETag, 304 for a matching If-None-Match, and a
+ * new ETag once the record was written; a view read before a write is never cached.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:person-get;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class PersonGetEndpointTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private PersonViewCache views;
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Test
+    void conditionalGetByKey() {
+        String forename = "get-" + UUID.randomUUID();
+        String key = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+
+        ResponseEntity<String> first = get(key, null);
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(first.getBody()).contains("\"aadhaarCounter\":\"1\"");
+        String etag = first.getHeaders().getETag();
+        assertThat(etag).isNotNull();
+
+        ResponseEntity<String> unchanged = get(key, etag);
+        assertThat(unchanged.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(unchanged.getBody()).isNull();
+
+        // A new source bumps the version, so the old ETag no longer matches
+        linkageService.processRequest(request("INSERT", "PAN", null, forename));
+        ResponseEntity<String> changed = get(key, etag);
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+        assertThat(changed.getBody()).contains("\"panCounter\":\"1\"");
+
+        assertThat(get(UUID.randomUUID().toString(), null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    void viewReadBeforeAWriteIsNotCached() {
+        String forename = "race-" + UUID.randomUUID();
+        String key = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+
+        long generation = views.generation(key);
+        LinkageResponse read = linkageService.processRequest(request("SEARCH", null, key, null));
+        linkageService.processRequest(request("INSERT", "PAN", null, forename));
+
+        views.put(key, generation, read);
+        assertThat(views.get(key)).isNull();
+    }
+
+    private ResponseEntity<String> get(String key, String ifNoneMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        if (ifNoneMatch != null) headers.setIfNoneMatch(ifNoneMatch);
+        return rest.exchange("/api/v1/person/" + key, HttpMethod.GET, new HttpEntity<>(headers), String.class);
+    }
+}
@@ -0,0 +1,56 @@
+package com.aadhaar.linkage.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The typed request reads every payload the map form did, and writes the same JSON shape back.
+ */
+class LinkageRequestJsonTests {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void readsMapShapedPayloads() throws Exception {
+        LinkageRequest req = mapper.readValue("""
+                {"action":" insert ","source":"Pan","data":{"pan_number":"ABCDE1234F","forename":"Ramesh",\
+                "dob":"1998-05-10","aadhaar_number":987654321012,"nickname":"Ram","extra":{"a":[1,2]},\
+                "gender":null},"oldAadhaarLinkageKey":null}""", LinkageRequest.class);
+
+        assertThat(req.getActionType()).isEqualTo(LinkageAction.INSERT);
+        assertThat(req.getSourceType()).isEqualTo(LinkageSource.PAN);
+        assertThat(req.getData()).isEqualTo(Map.of(
+                "pan_number", "ABCDE1234F", "forename", "Ramesh", "dob", "1998-05-10", "aadhaar_number", "987654321012"));
+
+        String json = mapper.writeValueAsString(req);
+        assertThat(mapper.readTree(json).path("data"))
+                .isEqualTo(mapper.valueToTree(req.getData()));
+        assertThat(mapper.readTree(json).has("actionType")).isFalse();
+    }
+
+    @Test
+    void builderAndMapFormStillWork() {
+        LinkageRequest req = LinkageRequest.builder()
+                .action("UPDATE").source("Voter").oldAadhaarLinkageKey("key")
+                .data(Map.of("voter_id", "ABC1234567", "forename", "Sita"))
+                .build();
+
+        assertThat(req.getActionType()).isEqualTo(LinkageAction.UPDATE);
+        assertThat(req.getSourceType()).isEqualTo(LinkageSource.VOTER);
+        assertThat(req.getData()).isEqualTo(Map.of("voter_id", "ABC1234567", "forename", "Sita"));
+        assertThat(req.getPersonData().getForename()).isEqualTo("Sita");
+    }
+
+    @Test
+    void unknownActionOrSourceIsNotParsed() {
+        LinkageRequest req = new LinkageRequest();
+        req.setAction("MERGE");
+        req.setSource("Passport");
+        assertThat(req.getActionType()).isNull();
+        assertThat(req.getSourceType()).isNull();
+    }
+}
@@ -0,0 +1,29 @@
+package com.aadhaar.linkage.model;
+
+import com.aadhaar.linkage.dto.LinkageSource;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Counters saturate at zero and {@link SourceCounters#MAX} without touching the other sources' lanes, so an
+ * UPDATE of a record at the limit still succeeds.
+ */
+class SourceCountersTests {
+
+    @Test
+    void countersSaturateWithinTheirLane() {
+        PersonIdentity p = new PersonIdentity();
+        p.setCounter(LinkageSource.PAN, 7);
+        p.setCounter(LinkageSource.AADHAAR, SourceCounters.MAX);
+
+        // What an UPDATE does to the new record: old + 1
+        p.setCounter(LinkageSource.AADHAAR, p.getCounter(LinkageSource.AADHAAR) + 1);
+        assertThat(p.getCounter(LinkageSource.AADHAAR)).isEqualTo(SourceCounters.MAX);
+        assertThat(p.getCounter(LinkageSource.PAN)).isEqualTo(7);
+
+        p.setCounter(LinkageSource.PAN, -1);
+        assertThat(p.getCounter(LinkageSource.PAN)).isZero();
+        assertThat(p.getSourceMask()).isEqualTo(1 << LinkageSource.AADHAAR.ordinal());
+    }
+}
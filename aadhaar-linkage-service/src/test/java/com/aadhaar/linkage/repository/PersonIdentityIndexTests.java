@@ -0,0 +1,116 @@
+package com.aadhaar.linkage.repository;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.service.LinkageService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the identity-match lookups are index backed, and (opt-in) measures INSERT latency as the table grows.
+ * <p>
+ * The benchmark is skipped unless run with {@code -Dlinkage.bench=true}; sizes can be overridden with
+ * {@code -Dlinkage.bench.sizes=10000,100000,1000000,10000000}. Rows are kept between runs in
+ * {@code target/bench}, so each size only tops up the table.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/bench/person_identity;DB_CLOSE_ON_EXIT=FALSE",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class PersonIdentityIndexTests {
+
+    private static final int WARMUP_INSERTS = 2_000;
+    private static final int TIMED_INSERTS = 1_000;
+    private static final int FILL_BATCH = 10_000;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Test
+    void identityMatchLookupsUseIndexes() {
+        assertThat(plan("SELECT * FROM person_identity WHERE identity_match_key = X'00'"))
+                .containsIgnoringCase("UK_PERSON_IDENTITY_MATCH");
+        assertThat(plan("SELECT * FROM person_identity WHERE hashed_aadhaar_number = X'00' AND hashed_dob = X'01' "
+                + "AND hashed_forename = X'02' AND hashed_lastname = X'03'"))
+                .containsIgnoringCase("/* PUBLIC.IDX_PERSON_");
+        assertThat(plan("SELECT * FROM person_identity WHERE hashed_aadhaar_number = X'00'"))
+                .containsIgnoringCase("IDX_PERSON_AADHAAR_MATCH");
+        assertThat(plan("SELECT * FROM person_identity WHERE hashed_pan_number = X'00'"))
+                .containsIgnoringCase("IDX_PERSON_PAN");
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "linkage.bench", matches = "true")
+    void insertLatencyStaysFlatAsTableGrows() {
+        String sizes = System.getProperty("linkage.bench.sizes", "10000,100000,1000000,10000000");
+        for (int i = 0; i < WARMUP_INSERTS; i++) {
+            linkageService.processRequest(newPersonInsert());
+        }
+        System.out.printf("%12s %12s %12s %12s%n", "rows", "mean(us)", "p50(us)", "p99(us)");
+        for (String size : sizes.split(",")) {
+            int rows = Integer.parseInt(size.trim());
+            fillTo(rows);
+
+            long[] nanos = new long[TIMED_INSERTS];
+            for (int i = 0; i < TIMED_INSERTS; i++) {
+                LinkageRequest req = newPersonInsert();
+                long start = System.nanoTime();
+                linkageService.processRequest(req);
+                nanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(nanos);
+            double mean = Arrays.stream(nanos).average().orElse(0) / 1_000;
+            System.out.printf("%12d %12.1f %12.1f %12.1f%n",
+                    rows, mean, nanos[nanos.length / 2] / 1_000.0, nanos[nanos.length * 99 / 100] / 1_000.0);
+        }
+    }
+
+    private String plan(String sql) {
+        return jdbc.queryForObject("EXPLAIN " + sql, String.class);
+    }
+
+    private void fillTo(int rows) {
+        Integer current = jdbc.queryForObject("SELECT COUNT(*) FROM person_identity", Integer.class);
+        int missing = rows - (current == null ? 0 : current);
+        String sql = "INSERT INTO person_identity (aadhaar_linkage_key, hashed_forename, hashed_dob, "
+                + "hashed_aadhaar_number, hashed_lastname, identity_match_key, "
+                + "source_counters, source_mask) "
+                + "VALUES (?, ?, ?, ?, ?, ?, 1, 1)";
+        while (missing > 0) {
+            int n = Math.min(missing, FILL_BATCH);
+            List<Object[]> batch = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                batch.add(new Object[]{UUID.randomUUID().toString(), randomHash(), randomHash(), randomHash(), randomHash(), randomHash()});
+            }
+            jdbc.batchUpdate(sql, batch);
+            missing -= n;
+        }
+    }
+
+    private LinkageRequest newPersonInsert() {
+        return LinkageRequest.builder().action("INSERT").source("AADHAAR").data(Map.of(
+                "forename", UUID.randomUUID().toString(),
+                "lastname", "bench",
+                "dob", "1990-01-01",
+                "aadhaar_number", String.valueOf(ThreadLocalRandom.current().nextLong(100_000_000_000L, 999_999_999_999L))
+        )).build();
+    }
+
+    private static byte[] randomHash() {
+        byte[] hash = new byte[32];
+        ThreadLocalRandom.current().nextBytes(hash);
+        return hash;
+    }
+}
@@ -0,0 +1,129 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.dto.PersonData;
+import com.aadhaar.linkage.util.BloomFilter;
+import com.aadhaar.linkage.util.HashUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.*;
+
+import static com.aadhaar.linkage.LinkageFixtures.data;
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Lookups by document find the records still holding it, single or batched; with the Bloom filters up,
+ * documents nobody holds are answered without a document query, including after other nodes wrote.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:lookup;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.lookup.bloom.enabled=true",
+        "linkage.lookup.bloom.expected-insertions=10000"
+})
+class DocumentLookupTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private DocumentLookupService lookupService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private IdentityHasher hasher;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void findsHoldersByAnyDocument() {
+        String pan = "PAN" + UUID.randomUUID().toString().substring(0, 7);
+        String key = key(linkageService.processRequest(insert("PAN", Map.of(
+                "pan_number", pan, "forename", "lookup-" + pan, "dob", "1990-01-01"))));
+        linkageService.processRequest(insert("VOTER", Map.of(
+                "voter_id", "V-" + pan, "forename", "lookup-" + pan, "dob", "1990-01-01")));
+        lookupService.rebuild();
+
+        // Hashed like every other field: case and surrounding blanks do not matter
+        LinkageResponse found = lookupService.lookup(Map.of("pan_number", " " + pan.toLowerCase(Locale.ROOT)));
+        assertThat(found.getData()).isEqualTo(Map.of("pan_number", List.of(key)));
+
+        double filteredBefore = filtered();
+        LinkageResponse batch = lookupService.lookupBatch(List.of(
+                Map.of("voter_id", "V-" + pan),
+                Map.of("dl_number", "nobody-holds-" + pan)));
+        assertThat(batch.getData()).isEqualTo(List.of(
+                Map.of("voter_id", List.of(key)),
+                Map.of("dl_number", List.of())));
+        assertThat(filtered()).isEqualTo(filteredBefore + 1);
+
+        long voterOnly = records(lookupService.coverage(List.of("VOTER"), List.of("PAN")));
+
+        // A source that was deleted no longer counts
+        linkageService.processRequest(request("DELETE", "PAN", key, null));
+        assertThat(lookupService.lookup(Map.of("pan_number", pan)).getData())
+                .isEqualTo(Map.of("pan_number", List.of()));
+        assertThat(records(lookupService.coverage(List.of("VOTER"), List.of("PAN")))).isEqualTo(voterOnly + 1);
+        assertThat(lookupService.coverage(List.of("PAN"), List.of("pan")).getStatus()).isEqualTo("ERROR");
+
+        assertThat(lookupService.lookup(Map.of("forename", "x")).getStatus()).isEqualTo("ERROR");
+    }
+
+    @Test
+    void documentsWrittenByAnotherNodeAreFound() {
+        lookupService.rebuild();
+        String pan = "PAN" + UUID.randomUUID().toString().substring(0, 7);
+        String key = UUID.randomUUID().toString();
+        HashedIdentity hashed = hasher.hash(PersonData.fromMap(Map.of(
+                "pan_number", pan, "forename", "elsewhere-" + pan, "dob", "1990-01-01")));
+        // Written straight to the table, as by another node: remember() never saw it
+        jdbc.update("INSERT INTO person_identity (aadhaar_linkage_key, hashed_forename, hashed_dob, hashed_pan_number, "
+                        + "source_counters, source_mask, created_at, updated_at) "
+                        + "VALUES (?, ?, ?, ?, 1, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                key, hashed.getForename().toBytes(), hashed.getDob().toBytes(), hashed.getPanNumber().toBytes(),
+                LinkageSource.PAN.bit());
+
+        assertThat(lookupService.lookup(Map.of("pan_number", pan)).getData())
+                .isEqualTo(Map.of("pan_number", List.of(key)));
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(HashUtil.sha256Bytes("in-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(HashUtil.sha256Bytes("in-" + i))).isTrue();
+            if (filter.mightContain(HashUtil.sha256Bytes("out-" + i))) falsePositives++;
+        }
+        assertThat(falsePositives).isLessThan(250);
+        assertThat(filter.expectedFalsePositiveRate()).isBetween(0.005, 0.02);
+    }
+
+    private double filtered() {
+        return meterRegistry.get("linkage.lookup.documents").tag("result", "filtered").counter().count();
+    }
+
+    private static LinkageRequest insert(String source, Map<String, String> data) {
+        return LinkageRequest.builder().action("INSERT").source(source).data(data).build();
+    }
+
+    private static long records(LinkageResponse response) {
+        return (Long) data(response).get("records");
+    }
+}
@@ -0,0 +1,93 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.util.LinkageKeyGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.*;
+
+import static com.aadhaar.linkage.LinkageFixtures.data;
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Near-duplicate spellings born on the same day are offered as candidates (or linked, when they score high
+ * enough), while other names and other birthdays stay out of the block. Sharded storage is refused.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:blocking;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.fuzzy.enabled=true",
+        "linkage.fuzzy.token-key=test-secret",
+        "linkage.fuzzy.auto-link-threshold=0.95"
+})
+class IdentityBlockingTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Test
+    void soundexCodes() {
+        assertThat(IdentityBlocking.phonetic("robert")).isEqualTo("R163");
+        assertThat(IdentityBlocking.phonetic("rupert")).isEqualTo("R163");
+        assertThat(IdentityBlocking.phonetic("ashcraft")).isEqualTo("A261");
+        assertThat(IdentityBlocking.phonetic("pfister")).isEqualTo("P236");
+        assertThat(IdentityBlocking.phonetic("ramesh")).isEqualTo(IdentityBlocking.phonetic("ramseh"));
+    }
+
+    @Test
+    void nearDuplicatesAreOfferedOrLinked() {
+        String ramesh = key(insert("Ramesh", "1988-03-14"));
+
+        LinkageResponse typo = insert("Ramseh", "1988-03-14");
+        assertThat(key(typo)).isNotEqualTo(ramesh);
+        assertThat(duplicates(typo)).contains(ramesh);
+
+        assertThat(duplicates(insert("Ramesh Kumar", "1988-03-14"))).contains(ramesh);
+        assertThat(duplicates(insert("Ramesh", "1988-03-15"))).isEmpty();
+        assertThat(duplicates(insert("Suresh", "1988-03-14"))).isEmpty();
+
+        // Same name parts, different punctuation: no exact match, but a perfect token overlap
+        LinkageResponse linked = insert("Ramesh.", "1988-03-14", "PAN");
+        assertThat(linked.getMessage()).isEqualTo("Record updated with new source");
+        assertThat(key(linked)).isEqualTo(ramesh);
+    }
+
+    @Test
+    void refusedWithShardedStorage() {
+        ShardRouter sharded = new ShardRouter(LinkageKeyGenerator.random(), true, 2, 1);
+        try {
+            assertThatThrownBy(() -> new IdentityBlocking(null, new SimpleMeterRegistry(), sharded,
+                    true, "test-secret", 0.6, 1.0, 200, 5))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("linkage.shards.enabled");
+        } finally {
+            sharded.shutdown();
+        }
+    }
+
+    private LinkageResponse insert(String forename, String dob) {
+        return insert(forename, dob, "AADHAAR");
+    }
+
+    private LinkageResponse insert(String forename, String dob, String source) {
+        LinkageResponse response = linkageService.processRequest(
+                LinkageRequest.builder().action("INSERT").source(source).data(Map.of("forename", forename, "dob", dob)).build());
+        assertThat(response.getStatus()).isEqualTo("SUCCESS");
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> duplicates(LinkageResponse response) {
+        List<Map<String, Object>> candidates = (List<Map<String, Object>>)
+                data(response).getOrDefault("possibleDuplicates", List.of());
+        return candidates.stream().map(c -> (String) c.get("aadhaarLinkageKey")).toList();
+    }
+}
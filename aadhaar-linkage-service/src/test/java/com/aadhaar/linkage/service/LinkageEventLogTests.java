@@ -0,0 +1,146 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.util.MappedJournal;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.newKey;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Every committed mutation shows up in the journal once, in order, with its keys and counter deltas;
+ * a rolled back one does not. Only the holder of the relay lease relays, and a read from an offset that is not
+ * a record start is refused. The relay is driven by hand (the poll interval is an hour).
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:events;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.events.enabled=true",
+        "linkage.events.dir=target/events-test",
+        "linkage.events.segment-size=4KB",
+        "linkage.events.poll-interval=1h"
+})
+class LinkageEventLogTests {
+
+    private static final Path DIR = Path.of("target", "events-test");
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private LinkageEventRelay relay;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    static void cleanJournal() {
+        FileSystemUtils.deleteRecursively(DIR.toFile());
+    }
+
+    @Test
+    void mutationsAreJournaledInOrder() throws Exception {
+        long start = relay.endOffset();
+        String forename = "events-" + UUID.randomUUID();
+        String key = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+        linkageService.processRequest(request("INSERT", "PAN", null, forename));
+        linkageService.processRequest(request("INSERT", "PAN", null, forename)); // no change, no event
+        LinkageResponse updated = linkageService.processRequest(request("UPDATE", "AADHAAR", key, forename + "-renamed"));
+        String newKey = newKey(updated);
+        linkageService.processRequest(request("DELETE", "PAN", key, null));
+        linkageService.processRequest(request("UPDATE", "AADHAAR", "no-such-key", forename)); // error, rolled back
+
+        assertThat(relay.relayAll()).isEqualTo(4);
+        List<JsonNode> events = new ArrayList<>();
+        for (MappedJournal.Entry entry : relay.read(start, 100)) {
+            events.add(objectMapper.readTree(entry.payload()));
+        }
+
+        assertThat(events).hasSize(4);
+        assertEvent(events.get(0), "INSERT", null, key, "AADHAAR", 1, 0, false);
+        assertEvent(events.get(1), "INSERT", key, key, "PAN", 0, 1, false);
+        assertEvent(events.get(2), "UPDATE", key, newKey, "AADHAAR", -1, 0, false);
+        assertEvent(events.get(3), "DELETE", key, null, "PAN", 0, -1, true);
+        assertThat(relay.relayAll()).isZero();
+    }
+
+    @Test
+    void onlyTheLeaseHolderRelays() {
+        relay.relayAll();
+        jdbc.update("UPDATE event_relay_lease SET owner = 'other-node', "
+                + "expires_at = CURRENT_TIMESTAMP + INTERVAL '1' HOUR WHERE name = 'relay'");
+        try {
+            linkageService.processRequest(request("INSERT", "AADHAAR", null, "lease-" + UUID.randomUUID()));
+            assertThat(relay.relayAll()).isZero();
+
+            // Expired, so this node takes over
+            jdbc.update("UPDATE event_relay_lease SET expires_at = TIMESTAMP '2000-01-01 00:00:00' WHERE name = 'relay'");
+            assertThat(relay.relayAll()).isEqualTo(1);
+            assertThat(jdbc.queryForObject("SELECT owner FROM event_relay_lease WHERE name = 'relay'", String.class))
+                    .isNotEqualTo("other-node");
+        } finally {
+            jdbc.update("UPDATE event_relay_lease SET owner = NULL WHERE name = 'relay'");
+        }
+    }
+
+    @Test
+    void journalSurvivesReopenAndRollsSegments() throws Exception {
+        Path dir = DIR.resolve("standalone");
+        FileSystemUtils.deleteRecursively(dir.toFile());
+        List<byte[]> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(("record-" + i + "-" + "x".repeat(100)).getBytes());
+        }
+        long end;
+        try (MappedJournal journal = new MappedJournal(dir, 4096, 0)) {
+            journal.append(batch.subList(0, 25));
+            end = journal.append(batch.subList(25, 50));
+        }
+
+        try (MappedJournal reopened = new MappedJournal(dir, 4096, 0)) {
+            assertThat(reopened.endOffset()).isEqualTo(end);
+            List<MappedJournal.Entry> entries = new ArrayList<>();
+            long offset = 0;
+            for (List<MappedJournal.Entry> page; !(page = reopened.read(offset, 7)).isEmpty(); ) {
+                entries.addAll(page);
+                offset = page.get(page.size() - 1).nextOffset();
+            }
+            assertThat(entries).extracting(e -> new String(e.payload()))
+                    .isEqualTo(batch.stream().map(String::new).toList());
+            assertThat(reopened.activeSegmentOffset()).isPositive();
+
+            // An offset inside a record reads payload bytes as the header
+            assertThatThrownBy(() -> reopened.read(entries.get(1).offset() + 3, 10))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static void assertEvent(JsonNode event, String type, String oldKey, String newKey, String source,
+                                    int aadhaarDelta, int panDelta, boolean oldKeyDeleted) {
+        assertThat(event.path("type").asText()).isEqualTo(type);
+        assertThat(event.path("oldKey").isNull() ? null : event.path("oldKey").asText()).isEqualTo(oldKey);
+        assertThat(event.path("newKey").isNull() ? null : event.path("newKey").asText()).isEqualTo(newKey);
+        assertThat(event.path("source").asText()).isEqualTo(source);
+        assertThat(event.path("deltas").path("AADHAAR").asInt()).isEqualTo(aadhaarDelta);
+        assertThat(event.path("deltas").path("PAN").asInt()).isEqualTo(panDelta);
+        assertThat(event.path("oldKeyDeleted").asBoolean()).isEqualTo(oldKeyDeleted);
+    }
+}
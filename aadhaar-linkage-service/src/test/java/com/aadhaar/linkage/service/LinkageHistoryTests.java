@@ -0,0 +1,102 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.aadhaar.linkage.LinkageFixtures.data;
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.newKey;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * UPDATEs leave a lineage of keys with only the changed fields, which survives the deletion of the older records
+ * and keeps its links when compaction folds the deltas. A replaced record that lives on keeps only its counters.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:history;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.history.enabled=true",
+        "linkage.history.retention=0s"
+})
+class LinkageHistoryTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private LinkageHistory history;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void lineageListsEveryKeyWithItsChanges() {
+        String forename = "history-" + UUID.randomUUID();
+        String first = key(linkageService.processRequest(request("INSERT", null, Map.of(
+                "forename", forename, "dob", "1990-01-01", "address", "old street"))));
+        String second = newKey(linkageService.processRequest(request("UPDATE", first, Map.of(
+                "forename", forename, "dob", "1990-01-01", "address", "new street"))));
+        String third = newKey(linkageService.processRequest(request("UPDATE", second, Map.of(
+                "forename", forename + "-renamed", "dob", "1990-01-01", "address", "new street"))));
+
+        List<Map<String, Object>> lineage = lineage(third);
+        assertThat(lineage).extracting(m -> m.get("aadhaarLinkageKey")).containsExactly(first, second, third);
+        assertThat(lineage.get(1)).containsEntry("predecessor", first).containsEntry("changed", List.of("ADDRESS"));
+        assertThat(lineage.get(2)).containsEntry("predecessor", second).containsEntry("changed", List.of("FORENAME"));
+        // Any key of the lineage finds all of it, including the first one, whose record is gone
+        assertThat(lineage(first)).isEqualTo(lineage);
+
+        assertThat(history.compact()).isGreaterThanOrEqualTo(1);
+        List<Map<String, Object>> compacted = lineage(second);
+        assertThat(compacted).extracting(m -> m.get("aadhaarLinkageKey")).containsExactly(first, second, third);
+        assertThat(compacted.get(1)).containsEntry("changed", List.of());
+        assertThat(compacted.get(2)).containsEntry("changed", List.of("FORENAME", "ADDRESS"));
+        assertThat(jdbc.queryForObject("SELECT COUNT(*) FROM person_history WHERE lineage_key = ? AND delta IS NOT NULL",
+                Integer.class, first)).isOne();
+    }
+
+    @Test
+    void replacedRecordKeepsOnlyItsCounters() {
+        Map<String, String> person = Map.of("forename", "superseded-" + UUID.randomUUID(), "dob", "1990-01-01",
+                "pan_number", "PAN-" + UUID.randomUUID().toString().substring(0, 8));
+        String old = key(linkageService.processRequest(request("INSERT", null, person)));
+        linkageService.processRequest(LinkageRequest.builder().action("INSERT").source("PAN").data(person).build());
+        String replacement = newKey(linkageService.processRequest(request("UPDATE", old, Map.of(
+                "forename", person.get("forename"), "dob", "1990-01-01", "address", "new street"))));
+
+        // Still holds PAN, so it lives on, but without the identity data its successor carries
+        Map<String, Object> row = jdbc.queryForMap("SELECT hashed_forename, hashed_dob, hashed_pan_number, "
+                + "identity_match_key, gender FROM person_identity WHERE aadhaar_linkage_key = ?", old);
+        assertThat(row.values()).containsOnlyNulls();
+        LinkageResponse found = linkageService.processRequest(
+                LinkageRequest.builder().action("SEARCH").source("PAN").oldAadhaarLinkageKey(old).build());
+        assertThat(data(found).get("panCounter")).isEqualTo("1");
+        assertThat(lineage(old)).extracting(m -> m.get("aadhaarLinkageKey")).containsExactly(old, replacement);
+    }
+
+    @Test
+    void unknownKeyHasNoLineage() {
+        assertThat(history.lineage(UUID.randomUUID().toString()).getStatus()).isEqualTo("ERROR");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> lineage(String key) {
+        LinkageResponse response = history.lineage(key);
+        assertThat(response.getStatus()).isEqualTo("SUCCESS");
+        return (List<Map<String, Object>>) response.getData();
+    }
+
+    private static LinkageRequest request(String action, String oldKey, Map<String, String> data) {
+        return LinkageRequest.builder().action(action).source("AADHAAR").oldAadhaarLinkageKey(oldKey).data(data).build();
+    }
+}
@@ -0,0 +1,126 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.model.PersonIdentity;
+import com.aadhaar.linkage.repository.LinkageRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many threads hitting the same person at once must neither lose counter updates nor leave half-applied state.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:concurrency;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.retry.max-attempts=20"
+})
+class LinkageServiceConcurrencyTests {
+
+    private static final List<String> SOURCES = List.of("AADHAAR", "PAN", "VOTER", "DRIVING");
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private LinkageRepository repo;
+
+    @Test
+    void concurrentInsertsFromEverySourceAreAllCounted() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String forename = "insert-" + round + "-" + UUID.randomUUID();
+            String key = key(linkageService.processRequest(insert("AADHAAR", forename)));
+
+            List<LinkageResponse> responses = runConcurrently(
+                    SOURCES.subList(1, SOURCES.size()).stream().map(source -> insert(source, forename)).toList());
+
+            assertThat(responses).allMatch(r -> "SUCCESS".equals(r.getStatus()));
+            PersonIdentity person = repo.findById(key).orElseThrow();
+            assertThat(person.getCounter(LinkageSource.AADHAAR)).isEqualTo(1);
+            assertThat(person.getCounter(LinkageSource.PAN)).isEqualTo(1);
+            assertThat(person.getCounter(LinkageSource.VOTER)).isEqualTo(1);
+            assertThat(person.getCounter(LinkageSource.DRIVING)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void concurrentFirstInsertsOfOnePersonCreateOneRecord() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String forename = "first-" + round + "-" + UUID.randomUUID();
+            List<LinkageResponse> responses = runConcurrently(
+                    SOURCES.stream().map(source -> insert(source, forename)).toList());
+
+            assertThat(responses).allMatch(r -> "SUCCESS".equals(r.getStatus()));
+            Set<String> keys = new HashSet<>();
+            responses.forEach(r -> keys.add(key(r)));
+            assertThat(keys).hasSize(1);
+
+            PersonIdentity person = repo.findById(keys.iterator().next()).orElseThrow();
+            assertThat(person.getCounter(LinkageSource.AADHAAR)).isEqualTo(1);
+            assertThat(person.getCounter(LinkageSource.PAN)).isEqualTo(1);
+            assertThat(person.getCounter(LinkageSource.VOTER)).isEqualTo(1);
+            assertThat(person.getCounter(LinkageSource.DRIVING)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void concurrentUpdatesOfOneKeyApplyEveryDecrement() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            String forename = "update-" + round + "-" + UUID.randomUUID();
+            String oldKey = null;
+            for (String source : SOURCES) {
+                oldKey = key(linkageService.processRequest(insert(source, forename)));
+            }
+
+            String key = oldKey;
+            List<LinkageResponse> responses = runConcurrently(
+                    SOURCES.stream().map(source -> update(source, key, forename)).toList());
+
+            // Each update moves one source off the old record; once all four have, it must be gone
+            assertThat(responses).allMatch(r -> "SUCCESS".equals(r.getStatus()));
+            assertThat(repo.findById(key)).isEmpty();
+        }
+    }
+
+    private List<LinkageResponse> runConcurrently(List<LinkageRequest> requests) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(requests.size());
+        try {
+            CyclicBarrier start = new CyclicBarrier(requests.size());
+            List<Future<LinkageResponse>> futures = new ArrayList<>();
+            for (LinkageRequest req : requests) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return linkageService.processRequest(req);
+                }));
+            }
+            List<LinkageResponse> responses = new ArrayList<>();
+            for (Future<LinkageResponse> f : futures) {
+                responses.add(f.get(30, TimeUnit.SECONDS));
+            }
+            return responses;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static LinkageRequest insert(String source, String forename) {
+        return LinkageRequest.builder().action("INSERT").source(source)
+                .data(Map.of("forename", forename, "dob", "1990-01-01", "aadhaar_number", "123412341234")).build();
+    }
+
+    private static LinkageRequest update(String source, String key, String forename) {
+        return LinkageRequest.builder().action("UPDATE").source(source).oldAadhaarLinkageKey(key)
+                .data(Map.of("forename", forename + "-" + source, "dob", "1990-01-01", "address", "new address")).build();
+    }
+}
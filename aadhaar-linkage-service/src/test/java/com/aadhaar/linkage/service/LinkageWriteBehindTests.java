@@ -0,0 +1,162 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.dto.LinkageSource;
+import com.aadhaar.linkage.dto.PersonData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.aadhaar.linkage.LinkageFixtures.data;
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Queued INSERTs are answered before the row exists, read back by SEARCH, coalesced per person, and replayed
+ * from the journal by a new instance (as after a restart), except those already written. Records that keep
+ * failing are dead-lettered without holding up the rest.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:writebehind;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.write-behind.enabled=true",
+        "linkage.write-behind.dir=target/write-behind-test/${random.uuid}",
+        "linkage.write-behind.flush-interval=1h"
+})
+class LinkageWriteBehindTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private LinkageWriteBehind writeBehind;
+
+    @Autowired
+    private IdentityHasher hasher;
+
+    @Autowired
+    private PersonViewCache views;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    void queuedInsertIsReadBackBySearch() {
+        LinkageResponse queued = linkageService.processRequest(request("INSERT", "AADHAAR", null, "behind-" + UUID.randomUUID()));
+        assertThat(queued.getMessage()).isEqualTo("Record queued");
+        String key = key(queued);
+        assertThat(rows(key)).isZero();
+
+        LinkageResponse found = linkageService.processRequest(request("SEARCH", "AADHAAR", key, null));
+        assertThat(found.getMessage()).isEqualTo("Record found");
+        assertThat(data(found).get("aadhaarCounter")).isEqualTo("1");
+    }
+
+    @Test
+    void sourcesOfOnePersonAreCoalesced() {
+        String forename = "coalesce-" + UUID.randomUUID();
+        String key = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+        assertThat(key(linkageService.processRequest(request("INSERT", "PAN", null, forename)))).isEqualTo(key);
+
+        writeBehind.flush();
+        assertThat(jdbc.queryForObject("SELECT source_mask FROM person_identity WHERE aadhaar_linkage_key = ?", Integer.class, key))
+                .isEqualTo(LinkageSource.AADHAAR.bit() | LinkageSource.PAN.bit());
+    }
+
+    @Test
+    void queueingDropsTheCachedView() {
+        String forename = "view-" + UUID.randomUUID();
+        String key = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+        writeBehind.flush();
+        views.put(key, views.generation(key), linkageService.processRequest(request("SEARCH", null, key, null)));
+        assertThat(views.get(key)).isNotNull();
+
+        // GET serves cached views without waiting for the flush, so a queued INSERT must not leave one behind
+        linkageService.processRequest(request("INSERT", "PAN", null, forename));
+        assertThat(views.get(key)).isNull();
+    }
+
+    @Test
+    void queuedInsertsAreReplayedAfterRestart() throws IOException {
+        Path dir = Path.of("target", "write-behind-test", UUID.randomUUID().toString());
+        PersonData data = PersonData.fromMap(Map.of("forename", "replay-" + UUID.randomUUID(), "dob", "1990-01-01"));
+        HashedIdentity hashed = hasher.hash(data);
+        String key = UUID.randomUUID().toString();
+        standalone(dir).append(new QueuedInsert(key, false, LinkageSource.VOTER, hashed, null, null));
+
+        LinkageWriteBehind restarted = standalone(dir);
+        assertThat(restarted.queued(hashed.getMatchKey()).key()).isEqualTo(key);
+        assertThat(restarted.flush()).isEqualTo(1);
+        assertThat(rows(key)).isOne();
+
+        assertThat(standalone(dir).flush()).isZero();
+    }
+
+    @Test
+    void recordsWrittenBeforeACrashAreNotReplayed() throws IOException {
+        Path dir = Path.of("target", "write-behind-test", UUID.randomUUID().toString());
+        String forename = "crash-" + UUID.randomUUID();
+        HashedIdentity hashed = hasher.hash(PersonData.fromMap(Map.of("forename", forename, "dob", "1990-01-01")));
+        String key = UUID.randomUUID().toString();
+        LinkageWriteBehind crashed = standalone(dir);
+        crashed.append(new QueuedInsert(key, false, LinkageSource.VOTER, hashed, null, null));
+        assertThat(crashed.flush()).isEqualTo(1);
+
+        // The source is removed again, and the checkpoint of the flush was never saved
+        assertThat(linkageService.processRequest(request("DELETE", "VOTER", key, forename)).getStatus()).isEqualTo("SUCCESS");
+        Files.delete(dir.resolve("flushed"));
+
+        assertThat(standalone(dir).flush()).isEqualTo(1);
+        assertThat(rows(key)).isZero();
+    }
+
+    @Test
+    void failingRecordsAreDeadLetteredAndTheFlushMovesOn() throws IOException {
+        Path dir = Path.of("target", "write-behind-test", UUID.randomUUID().toString());
+        LinkageWriteBehind writer = standalone(dir);
+        HashedIdentity poison = hasher.hash(PersonData.fromMap(Map.of("forename", "poison-" + UUID.randomUUID(), "dob", "1990-01-01")));
+        HashedIdentity healthy = hasher.hash(PersonData.fromMap(Map.of("forename", "healthy-" + UUID.randomUUID(), "dob", "1990-01-01")));
+        String poisonKey = UUID.randomUUID().toString();
+        String healthyKey = UUID.randomUUID().toString();
+        // Longer than the gender column: fails on every attempt
+        writer.append(new QueuedInsert(poisonKey, false, LinkageSource.VOTER, poison, "x".repeat(40), null));
+        writer.append(new QueuedInsert(healthyKey, false, LinkageSource.VOTER, healthy, null, null));
+
+        assertThat(writer.flush()).isEqualTo(2);
+        assertThat(rows(poisonKey)).isZero();
+        assertThat(rows(healthyKey)).isOne();
+        assertThat(writer.queued(poison.getMatchKey())).isNull();
+        assertThat(Files.readAllLines(dir.resolve("dead-letter"))).hasSize(1);
+
+        assertThat(standalone(dir).flush()).isZero();
+    }
+
+    private LinkageWriteBehind standalone(Path dir) throws IOException {
+        return new LinkageWriteBehind(context.getBeanProvider(LinkageService.class), context.getBean(ShardRouter.class),
+                context.getBean(MatchKeyFilter.class), context.getBean(PlatformTransactionManager.class), jdbc,
+                new SimpleMeterRegistry(), true, dir, DataSize.ofMegabytes(1), 500, Duration.ofHours(1),
+                Duration.ofSeconds(5), 5);
+    }
+
+    private int rows(String key) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM person_identity WHERE aadhaar_linkage_key = ?", Integer.class, key);
+    }
+}
@@ -0,0 +1,122 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.util.HashUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * New people skip the existence query, known ones are still found, a person this node never saw (inserted by
+ * "another node") is linked after the unique-key retry, and a restored snapshot catches up with later rows.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:matchfilter;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.cache.enabled=false",
+        "linkage.match-filter.enabled=true",
+        "linkage.match-filter.expected-insertions=10000",
+        "linkage.match-filter.snapshot=target/match-filter-test/filter.bin"
+})
+class MatchKeyFilterTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private MatchKeyFilter matchFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ShardRouter shards;
+
+    @Test
+    void newPeopleSkipTheQueryAndKnownOnesAreFound() {
+        matchFilter.rebuild();
+        String forename = "filter-" + UUID.randomUUID();
+
+        double absent = checks("absent");
+        String key = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+        assertThat(checks("absent")).isEqualTo(absent + 1);
+
+        double found = checks("found");
+        LinkageResponse again = linkageService.processRequest(request("INSERT", "PAN", null, forename));
+        assertThat(again.getMessage()).isEqualTo("Record updated with new source");
+        assertThat(key(again)).isEqualTo(key);
+        assertThat(checks("found")).isEqualTo(found + 1);
+    }
+
+    @Test
+    void personWrittenElsewhereIsLinkedAfterTheConflict() {
+        matchFilter.rebuild();
+        String forename = "elsewhere-" + UUID.randomUUID();
+        String key = insertBehindTheFiltersBack(forename);
+
+        LinkageResponse response = linkageService.processRequest(request("INSERT", "PAN", null, forename));
+        assertThat(response.getMessage()).isEqualTo("Record updated with new source");
+        assertThat(key(response)).isEqualTo(key);
+    }
+
+    @Test
+    void snapshotIsRestoredAndCaughtUp() {
+        String before = "snapshot-" + UUID.randomUUID();
+        linkageService.processRequest(request("INSERT", "AADHAAR", null, before));
+        MatchKeyFilter saved = standalone();
+        saved.rebuild();
+
+        String after = "snapshot-" + UUID.randomUUID();
+        insertBehindTheFiltersBack(after);
+
+        MatchKeyFilter restored = standalone();
+        assertThat(restored.restore()).isTrue();
+        assertThat(restored.mightExist(matchKey(before))).isTrue();
+        assertThat(restored.mightExist(matchKey(after))).isTrue();
+        assertThat(saved.mightExist(matchKey(after))).isFalse();
+    }
+
+    private MatchKeyFilter standalone() {
+        return new MatchKeyFilter(dataSource, shards, new SimpleMeterRegistry(), true, 10_000, 0.001,
+                Path.of("target", "match-filter-test", "standalone.bin"), Duration.ofHours(1), Duration.ofMinutes(1));
+    }
+
+    // As another node would: straight into the table, unseen by this node's filter
+    private String insertBehindTheFiltersBack(String forename) {
+        String key = UUID.randomUUID().toString();
+        jdbc.update("INSERT INTO person_identity (aadhaar_linkage_key, hashed_forename, hashed_dob, identity_match_key, "
+                        + "source_counters, source_mask, created_at, updated_at) VALUES (?, ?, ?, ?, 1, 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                key, HashUtil.sha256Bytes(forename), HashUtil.sha256Bytes("1990-01-01"), matchKey(forename).toBytes());
+        return key;
+    }
+
+    private double checks(String result) {
+        return meterRegistry.get("linkage.match-filter.checks").tag("result", result).counter().count();
+    }
+
+    private static IdentityHash matchKey(String forename) {
+        return IdentityHash.combine(IdentityHash.wrap(HashUtil.sha256Bytes(forename)),
+                IdentityHash.wrap(HashUtil.sha256Bytes("1990-01-01")));
+    }
+}
@@ -0,0 +1,110 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.util.HashUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SEARCH reads from the replica (here a second, unreplicated H2 database), except for keys this node has just
+ * written, and re-reads a replica miss on the primary. Rows read from the replica are not cached.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-primary;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.cache.enabled=true",
+        "linkage.replica.enabled=true",
+        "linkage.replica.datasource.jdbc-url=jdbc:h2:mem:replica-replica;DB_CLOSE_DELAY=-1",
+        "linkage.replica.datasource.username=sa",
+        "linkage.replica.migrate=true",
+        "linkage.replica.max-lag=1h"
+})
+class ReadReplicaTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primary;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replica;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private IdentityCache cache;
+
+    @Test
+    void searchReadsTheReplica() {
+        String key = UUID.randomUUID().toString();
+        insertRow(new JdbcTemplate(replica), key);
+
+        // Only the replica has it, so finding it proves where the read went
+        assertThat(search(key).getMessage()).isEqualTo("Record found");
+        assertThat(reads("replica")).isPositive();
+    }
+
+    @Test
+    void replicaRowsStayOutOfTheCache() {
+        String key = UUID.randomUUID().toString();
+        insertRow(new JdbcTemplate(replica), key);
+        assertThat(search(key).getMessage()).isEqualTo("Record found");
+
+        // A cached replica row would be served to reads that must see the primary
+        assertThat(cache.findByKey(key)).isEmpty();
+    }
+
+    @Test
+    void recentWritesAndReplicaMissesAreReadFromThePrimary() {
+        String written = key(linkageService.processRequest(
+                request("INSERT", "AADHAAR", null, "replica-" + UUID.randomUUID())));
+        assertThat(count(replica, written)).isZero();
+
+        double recentBefore = reads("primary_recent_write");
+        assertThat(search(written).getMessage()).isEqualTo("Record found");
+        assertThat(reads("primary_recent_write")).isEqualTo(recentBefore + 1);
+
+        // Written by another node: not on the replica yet, so the miss is re-read on the primary
+        String elsewhere = UUID.randomUUID().toString();
+        insertRow(new JdbcTemplate(primary), elsewhere);
+        double fallbackBefore = reads("primary_fallback");
+        assertThat(search(elsewhere).getMessage()).isEqualTo("Record found");
+        assertThat(reads("primary_fallback")).isEqualTo(fallbackBefore + 1);
+    }
+
+    private LinkageResponse search(String key) {
+        return linkageService.processRequest(request("SEARCH", "AADHAAR", key, null));
+    }
+
+    private double reads(String target) {
+        return meterRegistry.get("linkage.replica.reads").tag("target", target).counter().count();
+    }
+
+    private static int count(DataSource dataSource, String key) {
+        return new JdbcTemplate(dataSource).queryForObject(
+                "SELECT COUNT(*) FROM person_identity WHERE aadhaar_linkage_key = ?", Integer.class, key);
+    }
+
+    private static void insertRow(JdbcTemplate jdbc, String key) {
+        jdbc.update("INSERT INTO person_identity (aadhaar_linkage_key, hashed_forename, hashed_dob, source_counters, "
+                        + "source_mask, created_at, updated_at) VALUES (?, ?, ?, 1, 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                key, HashUtil.sha256Bytes("replica-" + key), HashUtil.sha256Bytes("1990-01-01"));
+    }
+}
@@ -0,0 +1,73 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.dto.LinkageRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports page through the whole table in key order and incremental exports pick up only later changes.
+ * A page size of 3 makes every export span several pages.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:export;DB_CLOSE_DELAY=-1",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+        "linkage.export.page-size=3",
+        "linkage.export.watermark-lag=0s"
+})
+class RecordExportTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private RecordExportService exportService;
+
+    @Test
+    void fullThenIncrementalExport() throws Exception {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keys.add(insert("export-" + i + "-" + UUID.randomUUID(), i % 2 == 0 ? "Male" : "Fe,male"));
+        }
+
+        LocalDateTime watermark = exportService.watermark();
+        List<String> ndjson = export(RecordExportService.Format.NDJSON, null, watermark);
+        assertThat(ndjson).hasSize(10);
+        assertThat(ndjson.stream().map(line -> line.substring(24, 60)).toList())
+                .isEqualTo(keys.stream().sorted().toList());
+        assertThat(ndjson.get(0)).startsWith("{\"aadhaar_linkage_key\":\"").contains("\"aadhaar_counter\":1");
+
+        List<String> csv = export(RecordExportService.Format.CSV, null, watermark);
+        assertThat(csv).hasSize(11);
+        assertThat(csv.get(0)).startsWith("aadhaar_linkage_key,hashed_aadhaar_number,");
+        assertThat(csv).anyMatch(row -> row.contains(",\"Fe,male\","));
+
+        Thread.sleep(5);
+        String later = insert("export-later-" + UUID.randomUUID(), "Male");
+        List<String> incremental = export(RecordExportService.Format.NDJSON, watermark, exportService.watermark());
+        assertThat(incremental).hasSize(1);
+        assertThat(incremental.get(0)).contains(later);
+    }
+
+    private List<String> export(RecordExportService.Format format, LocalDateTime since, LocalDateTime upTo) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(format, since, upTo, out);
+        String text = out.toString(StandardCharsets.UTF_8);
+        return text.isEmpty() ? List.of() : List.of(text.split("\r?\n"));
+    }
+
+    private String insert(String forename, String gender) {
+        return key(linkageService.processRequest(LinkageRequest.builder().action("INSERT").source("AADHAAR")
+                .data(Map.of("forename", forename, "dob", "1990-01-01", "gender", gender)).build()));
+    }
+}
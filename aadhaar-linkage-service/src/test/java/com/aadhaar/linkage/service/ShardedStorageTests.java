@@ -0,0 +1,207 @@
+package com.aadhaar.linkage.service;
+
+import com.aadhaar.linkage.config.ShardRoutingDataSource;
+import com.aadhaar.linkage.dto.LinkageRequest;
+import com.aadhaar.linkage.dto.LinkageResponse;
+import com.aadhaar.linkage.model.IdentityHash;
+import com.aadhaar.linkage.util.HashUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.*;
+
+import static com.aadhaar.linkage.LinkageFixtures.key;
+import static com.aadhaar.linkage.LinkageFixtures.newKey;
+import static com.aadhaar.linkage.LinkageFixtures.request;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Records are spread over three in-memory H2 shards and stay reachable by linkage key and by identity,
+ * including after an UPDATE moved an identity off its home shard (its home shard points at it) and after a
+ * rebalance, also when the match-key filter never saw it. The cache is off so every lookup goes to the shards.
+ */
+@SpringBootTest(properties = {
+        "linkage.shards.enabled=true",
+        "linkage.shards.count=3",
+        "linkage.shards.url-template=jdbc:h2:mem:shard{shard};DB_CLOSE_DELAY=-1",
+        "linkage.cache.enabled=false",
+        "linkage.match-filter.enabled=true",
+        "linkage.match-filter.expected-insertions=10000",
+        "linkage.match-filter.snapshot=target/match-filter-sharded/filter.bin",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.hibernate.SQL=WARN",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN"
+})
+class ShardedStorageTests {
+
+    @Autowired
+    private LinkageService linkageService;
+
+    @Autowired
+    private LinkageBatchService batchService;
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private ShardRebalancer rebalancer;
+
+    @Autowired
+    private ShardRoutingDataSource dataSource;
+
+    @Test
+    void batchInsertsLandOnTheShardOfTheirKey() {
+        List<LinkageRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            batch.add(request("INSERT", "AADHAAR", null, "batch-" + i + "-" + UUID.randomUUID()));
+        }
+        List<LinkageResponse> responses = batchService.processBatch(batch);
+
+        Set<Integer> used = new HashSet<>();
+        for (LinkageResponse response : responses) {
+            String key = key(response);
+            int shard = router.shardForKey(key);
+            assertThat(shardOf(key)).isEqualTo(shard);
+            used.add(shard);
+            assertThat(linkageService.processRequest(request("SEARCH", "AADHAAR", key, null)).getStatus())
+                    .isEqualTo("SUCCESS");
+        }
+        assertThat(used).hasSize(3);
+    }
+
+    @Test
+    void identityMovedByUpdateIsFoundOnItsShard() {
+        for (int round = 0; round < 10; round++) {
+            String forename = "moved-" + round + "-" + UUID.randomUUID();
+            String oldKey = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, forename)));
+            linkageService.processRequest(request("INSERT", "PAN", null, forename));
+
+            LinkageResponse updated = linkageService.processRequest(request("UPDATE", "AADHAAR", oldKey, forename + "-renamed"));
+            String newKey = newKey(updated);
+            assertThat(router.shardForKey(newKey)).isEqualTo(router.shardForKey(oldKey));
+
+            // Wherever the renamed identity lives, a further source must join it rather than create a duplicate
+            LinkageResponse joined = linkageService.processRequest(request("INSERT", "VOTER", null, forename + "-renamed"));
+            assertThat(key(joined)).isEqualTo(newKey);
+            if (homeOf(newKey) != router.shardForKey(newKey))
+                assertThat(pointedShard(newKey)).isEqualTo(router.shardForKey(newKey));
+        }
+    }
+
+    @Test
+    void identityAwayFromHomeIsFoundWhenTheFilterNeverSawIt() {
+        String forename = "unseen-" + UUID.randomUUID();
+        IdentityHash matchKey = IdentityHash.combine(IdentityHash.wrap(HashUtil.sha256Bytes(forename)),
+                IdentityHash.wrap(HashUtil.sha256Bytes("1990-01-01")));
+        int home = router.shardForMatch(matchKey);
+        String key;
+        do {
+            key = UUID.randomUUID().toString();
+        } while (router.shardForKey(key) == home);
+
+        // As another node would after an UPDATE: the record away from home and the pointer to it
+        jdbc(router.shardForKey(key)).update("INSERT INTO person_identity (aadhaar_linkage_key, hashed_forename, "
+                        + "hashed_dob, identity_match_key, source_counters, source_mask, created_at, updated_at) "
+                        + "VALUES (?, ?, ?, ?, 1, 1, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+                key, HashUtil.sha256Bytes(forename), HashUtil.sha256Bytes("1990-01-01"), matchKey.toBytes());
+        jdbc(home).update("INSERT INTO person_match_pointer (identity_match_key, aadhaar_linkage_key) VALUES (?, ?)",
+                matchKey.toBytes(), key);
+
+        LinkageResponse joined = linkageService.processRequest(request("INSERT", "PAN", null, forename));
+        assertThat(joined.getMessage()).isEqualTo("Record updated with new source");
+        assertThat(key(joined)).isEqualTo(key);
+    }
+
+    @Test
+    void updateCannotTakeOverAnIdentityOnAnotherShard() {
+        for (int round = 0; round < 10; round++) {
+            String taken = "taken-" + round + "-" + UUID.randomUUID();
+            String takenKey = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, taken)));
+            String other = key(linkageService.processRequest(request("INSERT", "AADHAAR", null, "other-" + UUID.randomUUID())));
+
+            LinkageResponse updated = linkageService.processRequest(request("UPDATE", "AADHAAR", other, taken));
+            assertThat(updated.getStatus()).isEqualTo("ERROR");
+            assertThat(updated.getMessage()).isEqualTo("Identity details conflict with another existing record");
+            // Also when placed ahead of a batch chunk's transaction
+            LinkageResponse batched = batchService.processBatch(List.of(request("UPDATE", "AADHAAR", other, taken))).get(0);
+            assertThat(batched.getMessage()).isEqualTo("Identity details conflict with another existing record");
+            assertThat(key(linkageService.processRequest(request("INSERT", "PAN", null, taken)))).isEqualTo(takenKey);
+        }
+    }
+
+    @Test
+    void rebalanceMovesMisplacedRecordsHome() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            keys.add(key(linkageService.processRequest(request("INSERT", "AADHAAR", null, "rebalance-" + i + "-" + UUID.randomUUID()))));
+        }
+        // Simulate a changed shard count: push every record one shard further along
+        for (String key : keys) {
+            int from = router.shardForKey(key);
+            JdbcTemplate source = jdbc(from);
+            Map<String, Object> row = source.queryForMap("SELECT * FROM person_identity WHERE aadhaar_linkage_key = ?", key);
+            List<String> columns = new ArrayList<>(row.keySet());
+            jdbc((from + 1) % router.count()).update("INSERT INTO person_identity (" + String.join(", ", columns) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")", row.values().toArray());
+            source.update("DELETE FROM person_identity WHERE aadhaar_linkage_key = ?", key);
+        }
+
+        assertThat(rebalancer.rebalance()).isGreaterThanOrEqualTo(keys.size());
+
+        for (String key : keys) {
+            assertThat(shardOf(key)).isEqualTo(router.shardForKey(key));
+            assertThat(linkageService.processRequest(request("SEARCH", "AADHAAR", key, null)).getStatus())
+                    .isEqualTo("SUCCESS");
+        }
+        // Rebuilt: one pointer per record away from its identity's home shard, and no other
+        int away = 0;
+        int pointers = 0;
+        for (int shard = 0; shard < router.count(); shard++) {
+            for (String key : jdbc(shard).queryForList(
+                    "SELECT aadhaar_linkage_key FROM person_identity WHERE identity_match_key IS NOT NULL", String.class)) {
+                if (homeOf(key) != shard) {
+                    away++;
+                    assertThat(pointedShard(key)).isEqualTo(shard);
+                }
+            }
+            pointers += jdbc(shard).queryForObject("SELECT COUNT(*) FROM person_match_pointer", Integer.class);
+        }
+        assertThat(pointers).isEqualTo(away);
+    }
+
+    private JdbcTemplate jdbc(int shard) {
+        return new JdbcTemplate((DataSource) dataSource.shards().get(shard));
+    }
+
+    // Home shard of the record's identity-match key
+    private int homeOf(String key) {
+        byte[] match = jdbc(router.shardForKey(key)).queryForObject(
+                "SELECT identity_match_key FROM person_identity WHERE aadhaar_linkage_key = ?", byte[].class, key);
+        return router.shardForMatch(IdentityHash.fromBytes(match));
+    }
+
+    // Shard that the pointer on the home shard of the record's identity names
+    private int pointedShard(String key) {
+        byte[] match = jdbc(router.shardForKey(key)).queryForObject(
+                "SELECT identity_match_key FROM person_identity WHERE aadhaar_linkage_key = ?", byte[].class, key);
+        String pointed = jdbc(homeOf(key)).queryForObject(
+                "SELECT aadhaar_linkage_key FROM person_match_pointer WHERE identity_match_key = ?", String.class, match);
+        return router.shardForKey(pointed);
+    }
+
+    private int shardOf(String key) {
+        int found = -1;
+        for (int shard = 0; shard < router.count(); shard++) {
+            Integer rows = jdbc(shard).queryForObject(
+                    "SELECT COUNT(*) FROM person_identity WHERE aadhaar_linkage_key = ?", Integer.class, key);
+            if (rows != null && rows > 0) {
+                assertThat(found).as("record %s on more than one shard", key).isEqualTo(-1);
+                found = shard;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,40 @@
+package com.aadhaar.linkage.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keys are version 7 UUID strings that keep increasing, past the 4096 per millisecond the sequence holds and when
+ * the clock steps back.
+ */
+class TimeOrderedKeyGeneratorTests {
+
+    @Test
+    void keysAreIncreasingVersion7Uuids() {
+        AtomicLong millis = new AtomicLong(1_700_000_000_000L);
+        TimeOrderedKeyGenerator generator = new TimeOrderedKeyGenerator(new Clock() {
+            @Override public ZoneOffset getZone() { return ZoneOffset.UTC; }
+            @Override public Clock withZone(java.time.ZoneId zone) { return this; }
+            @Override public Instant instant() { return Instant.ofEpochMilli(millis.get()); }
+        });
+
+        String previous = generator.next();
+        for (int i = 0; i < 10_000; i++) {
+            if (i == 5_000) millis.addAndGet(-1_000);
+            String key = generator.next();
+            assertThat(key).isGreaterThan(previous);
+            previous = key;
+        }
+        UUID uuid = UUID.fromString(previous);
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+        assertThat(uuid.getMostSignificantBits() >>> 16).isGreaterThanOrEqualTo(1_700_000_000_000L);
+    }
+}